@@ -0,0 +1,68 @@
+import java.util.StringJoiner;
+
+// The answer to a query line, kept in primitive form until it is written
+// A probability or posterior query answers with its marginals (and, for a probability, the outcome asked for);
+// an independence query with a yes or no.
+public final class Answer {
+    static final Answer YES = new Answer(null, null, -1, true);
+    static final Answer NO = new Answer(null, null, -1, false);
+
+    final CompiledNetwork network;
+    final Marginals marginals;  // Null for an independence query
+    final int outcome;          // Outcome id of a probability query, -1 for a posterior
+    final boolean independent;
+
+    private Answer(CompiledNetwork network, Marginals marginals, int outcome, boolean independent) {
+        this.network = network;
+        this.marginals = marginals;
+        this.outcome = outcome;
+        this.independent = independent;
+    }
+
+    // The probability of one outcome of the only query variable
+    static Answer probability(CompiledNetwork network, Marginals marginals, int outcome) {
+        return new Answer(network, marginals, outcome, false);
+    }
+    // The posteriors of every query variable
+    static Answer posterior(CompiledNetwork network, Marginals marginals) {
+        return new Answer(network, marginals, -1, false);
+    }
+
+    static Answer independence(boolean independent) {
+        return independent ? YES : NO;
+    }
+
+    // The asked probability, as the output rounds it: a whole number of 1e-5
+    double probability() {
+        return rounded(marginals.distributions[0][outcome]);
+    }
+
+    // Formats the answer as its output line, the same text OutputWriter writes
+    public String format() {
+        if (marginals == null) {
+            return independent ? "yes\n" : "no\n";
+        }
+        if (outcome == -1) {
+            return posterior();
+        }
+        return String.format("%.5f,%d,%d\n", probability(), marginals.addOpers, marginals.mulOpers);
+    }
+
+    // "var=outcome:probability" for every outcome of every variable, then the counts
+    // e.g. "A=T:0.12345 A=F:0.87655 B=x:1.00000,4,12"
+    private String posterior() {
+        StringJoiner line = new StringJoiner(" ");
+        for (int i = 0; i < marginals.vars.length; i++) {
+            int var = marginals.vars[i];
+            for (int outcome = 0; outcome < marginals.distributions[i].length; outcome++) {
+                String probability = String.format("%.5f", rounded(marginals.distributions[i][outcome]));
+                line.add(network.names[var] + "=" + network.outcomes[var][outcome] + ":" + probability);
+            }
+        }
+        return line + "," + marginals.addOpers + "," + marginals.mulOpers + "\n";
+    }
+
+    private static double rounded(double probability) {
+        return Math.round(probability * 100000.0) / 100000.0;
+    }
+}
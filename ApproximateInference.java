@@ -0,0 +1,318 @@
+import java.nio.DoubleBuffer;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Sampling engine for networks whose exact factors do not fit in memory: likelihood weighting or Gibbs sampling
+// Samples are drawn in rounds of one batch per stream, each stream with its own split of one seeded random generator.
+// The streams and their batches are fixed, whatever the size of the pool that runs them, and the batch estimates are
+// combined in stream order, so a run stopped by its sample count gives the same estimate on any machine.
+// Sampling stops at the first of a sample count, a time budget or a confidence interval narrower than a target width.
+public class ApproximateInference {
+    private static final int STREAMS = 8;           // Random streams, each drawing one batch per round
+    private static final int BATCH = 1024;          // Samples each stream draws per round
+    private static final int MIN_BATCHES = 8;       // Batches needed before the confidence interval is trusted
+    private static final int BURN_IN = 256;         // Gibbs sweeps each chain discards before it is sampled
+    private static final long HOPELESS = 1L << 20;   // Samples after which evidence no sample agreed with is given up
+    private static final double Z_95 = 1.959964;    // Two-sided 95% normal quantile
+    private static final long SEED = 0x5EED5EEDL;   // Runs stopped by sample count are reproducible
+
+    // Sampling methods
+    public enum Method {
+        LIKELIHOOD_WEIGHTING("lw"),  // Forward samples with the evidence clamped, weighted by its likelihood
+        GIBBS("gibbs");              // One Markov chain per stream, resampling each hidden variable from its Markov blanket
+
+        private final String label;
+
+        Method(String label) {
+            this.label = label;
+        }
+        // Returns the method with the given label
+        public static Method fromLabel(String label) {
+            for (Method method : values()) {
+                if (method.label.equals(label)) {
+                    return method;
+                }
+            }
+            throw new IllegalArgumentException("Unknown sampling method " + label);
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    final CompiledNetwork network;
+    private final Method method;
+    private final long maxSamples;     // 0 for no limit
+    private final long maxMillis;      // 0 for no limit
+    private final double maxWidth;     // Width of the 95% confidence interval to reach, 0 for none
+    private final int[] topological;   // Parents before children
+    private final int[][] parentStrides;  // Stride of each parent in the node's CPT rows
+
+    public ApproximateInference(CompiledNetwork network, Method method, long maxSamples, long maxMillis, double maxWidth) {
+        if (maxSamples <= 0 && maxMillis <= 0 && maxWidth <= 0) {
+            throw new IllegalArgumentException("Sampling needs a sample count, a time budget or a confidence interval width");
+        }
+        this.network = network;
+        this.method = method;
+        this.maxSamples = maxSamples;
+        this.maxMillis = maxMillis;
+        this.maxWidth = maxWidth;
+        int n = network.size();
+        this.parentStrides = new int[n][];
+        for (int node = 0; node < n; node++) {
+            int[] parents = network.parents[node];
+            parentStrides[node] = new int[parents.length];
+            int stride = network.cardinalities[node];
+            for (int i = parents.length - 1; i >= 0; i--) {
+                parentStrides[node][i] = stride;
+                stride *= network.cardinalities[parents[i]];
+            }
+        }
+        this.topological = topologicalOrder(network);
+    }
+
+    // Estimates the posteriors of several variables, each from its own samples
+    public Marginals marginals(int[] vars, int[] evidence) {
+        Marginals marginals = new Marginals(network, vars);
+        for (int i = 0; i < vars.length; i++) {
+            marginals.distributions[i] = marginal(vars[i], evidence);
+        }
+        return marginals;
+    }
+
+    // Estimates the marginal of a variable given the evidence, indexed by outcome id
+    public double[] marginal(int var, int[] evidence) {
+        int card = network.cardinalities[var];
+        if (evidence[var] != CompiledNetwork.NO_EVIDENCE) {
+            double[] observed = new double[card];
+            observed[evidence[var]] = 1.0;
+            return observed;
+        }
+        long deadline = maxMillis > 0 ? System.nanoTime() + maxMillis * 1_000_000L : Long.MAX_VALUE;
+        SplittableRandom root = new SplittableRandom(SEED);
+        Sampler[] samplers = new Sampler[STREAMS];
+        for (int s = 0; s < STREAMS; s++) {
+            samplers[s] = new Sampler(root.split(), var, evidence);
+        }
+
+        double[] totals = new double[card];
+        double[] sums = new double[card];     // Sums and sums of squares of the batch estimates, for the interval
+        double[] squares = new double[card];
+        int estimates = 0;
+        long samples = 0;
+        while (true) {
+            // The last round is cut short so that exactly the sample count is drawn
+            long round = maxSamples > 0 ? Math.min((long) STREAMS * BATCH, maxSamples - samples) : (long) STREAMS * BATCH;
+            List<Callable<double[]>> batches = new ArrayList<>(STREAMS);
+            for (int s = 0; s < STREAMS; s++) {
+                Sampler sampler = samplers[s];
+                int size = (int) (round / STREAMS + (s < round % STREAMS ? 1 : 0));
+                if (size > 0) {
+                    batches.add(() -> sampler.batch(size));
+                }
+            }
+            samples += round;
+            // The pool only decides where the batches run; their results are combined in stream order
+            for (Future<double[]> batch : ForkJoinPool.commonPool().invokeAll(batches)) {
+                double[] counts = get(batch);
+                double weight = 0.0;
+                for (int i = 0; i < card; i++) {
+                    totals[i] += counts[i];
+                    weight += counts[i];
+                }
+                if (weight > 0.0) {
+                    for (int i = 0; i < card; i++) {
+                        double estimate = counts[i] / weight;
+                        sums[i] += estimate;
+                        squares[i] += estimate * estimate;
+                    }
+                    estimates++;
+                }
+            }
+            if ((maxSamples > 0 && samples >= maxSamples) || System.nanoTime() >= deadline
+                    || (maxWidth > 0 && estimates >= MIN_BATCHES && width(sums, squares, estimates) <= maxWidth)
+                    || (estimates == 0 && samples >= HOPELESS)) {
+                break;
+            }
+        }
+
+        double total = 0.0;
+        for (double value : totals) {
+            total += value;
+        }
+        double[] marginal = new double[card];
+        for (int i = 0; i < card; i++) {
+            marginal[i] = totals[i] / total;  // NaN when no sample was consistent with the evidence, like the exact engines
+        }
+        return marginal;
+    }
+
+    // Widest 95% confidence interval over the outcomes, from the spread of the batch estimates (batch means)
+    private static double width(double[] sums, double[] squares, int estimates) {
+        double widest = 0.0;
+        for (int i = 0; i < sums.length; i++) {
+            double mean = sums[i] / estimates;
+            double variance = Math.max(0.0, (squares[i] - estimates * mean * mean) / (estimates - 1));
+            widest = Math.max(widest, 2 * Z_95 * Math.sqrt(variance / estimates));
+        }
+        return widest;
+    }
+
+    private static double[] get(Future<double[]> batch) {
+        try {
+            return batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while sampling", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static int[] topologicalOrder(CompiledNetwork network) {
+        int n = network.size();
+        int[] pending = new int[n];
+        int[] order = new int[n];
+        int size = 0;
+        for (int node = 0; node < n; node++) {
+            pending[node] = network.parents[node].length;
+            if (pending[node] == 0) {
+                order[size++] = node;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            for (int child : network.children[order[i]]) {
+                if (--pending[child] == 0) {
+                    order[size++] = child;
+                }
+            }
+        }
+        return order;
+    }
+
+    // The state of one worker: its random generator, its current sample and, for Gibbs, its place in the chain
+    private final class Sampler {
+        private final SplittableRandom random;
+        private final int var;
+        private final int[] evidence;
+        private final int[] state;
+        private final double[] distribution;
+        private boolean burnedIn;
+
+        Sampler(SplittableRandom random, int var, int[] evidence) {
+            this.random = random;
+            this.var = var;
+            this.evidence = evidence;
+            this.state = new int[network.size()];
+            int maxCard = 1;
+            for (int card : network.cardinalities) {
+                maxCard = Math.max(maxCard, card);
+            }
+            this.distribution = new double[maxCard];
+        }
+
+        // Draws samples and returns the weight they give each outcome of the query variable
+        double[] batch(int samples) {
+            double[] counts = new double[network.cardinalities[var]];
+            if (method == Method.LIKELIHOOD_WEIGHTING) {
+                for (int s = 0; s < samples; s++) {
+                    double weight = forward();
+                    counts[state[var]] += weight;
+                }
+            } else {
+                if (!burnedIn) {
+                    forward();
+                    for (int s = 0; s < BURN_IN; s++) {
+                        sweep();
+                    }
+                    burnedIn = true;
+                }
+                for (int s = 0; s < samples; s++) {
+                    sweep();
+                    counts[state[var]] += 1.0;
+                }
+            }
+            return counts;
+        }
+
+        // Samples every variable after its parents, clamping the evidence, and returns the likelihood of the evidence
+        private double forward() {
+            double weight = 1.0;
+            for (int node : topological) {
+                DoubleBuffer table = network.cpts[node];
+                int row = row(node);
+                if (evidence[node] != CompiledNetwork.NO_EVIDENCE) {
+                    state[node] = evidence[node];
+                    weight *= table.get(row + evidence[node]);
+                } else {
+                    int card = network.cardinalities[node];
+                    for (int x = 0; x < card; x++) {
+                        distribution[x] = table.get(row + x);
+                    }
+                    int outcome = sample(card);
+                    state[node] = outcome > -1 ? outcome : random.nextInt(card);
+                }
+            }
+            return weight;
+        }
+
+        // Resamples each hidden variable given its Markov blanket
+        // A variable whose every outcome has probability zero keeps its value (chains cannot leave such states)
+        private void sweep() {
+            for (int node : topological) {
+                if (evidence[node] != CompiledNetwork.NO_EVIDENCE) {
+                    continue;
+                }
+                int card = network.cardinalities[node];
+                int current = state[node];
+                for (int x = 0; x < card; x++) {
+                    state[node] = x;
+                    double p = network.cpts[node].get(row(node) + x);
+                    for (int child : network.children[node]) {
+                        p *= network.cpts[child].get(row(child) + state[child]);
+                    }
+                    distribution[x] = p;
+                }
+                int outcome = sample(card);
+                state[node] = outcome > -1 ? outcome : current;
+            }
+        }
+
+        // Index of the node's CPT row for the current state of its parents
+        private int row(int node) {
+            int[] parents = network.parents[node];
+            int row = 0;
+            for (int i = 0; i < parents.length; i++) {
+                row += state[parents[i]] * parentStrides[node][i];
+            }
+            return row;
+        }
+
+        // Draws an outcome from the first card entries of the distribution, which need not be normalized
+        // Returns -1 if every entry is zero
+        private int sample(int card) {
+            double total = 0.0;
+            for (int x = 0; x < card; x++) {
+                total += distribution[x];
+            }
+            if (total <= 0.0) {
+                return -1;
+            }
+            double u = random.nextDouble() * total;
+            for (int x = 0; x < card - 1; x++) {
+                u -= distribution[x];
+                if (u < 0.0) {
+                    return x;
+                }
+            }
+            return card - 1;
+        }
+    }
+}
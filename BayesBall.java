@@ -2,64 +2,85 @@ import java.util.*;
 
 // Class to check independence between nodes using the Bayes Ball algorithm
 public class BayesBall {
-    private BayesianNetwork bn;
+    private static final int UP = 0;    // The ball arrived from a parent
+    private static final int DOWN = 1;  // The ball arrived from a child (or starts at the source)
+
+    private CompiledNetwork network;
 
     public BayesBall(BayesianNetwork bn) {
-        this.bn = bn;
+        this(bn.getCompiled());
+    }
+
+    public BayesBall(CompiledNetwork network) {
+        this.network = network;
     }
 
     // Method to check if two nodes are independent given some evidence
     public boolean areIndependent(String nodeA, String nodeB, Map<String, String> evidence) {
-        Set<String> visited = new HashSet<>();
-        return !bayesBall(nodeA, nodeB, evidence, visited, "down");
+        return areIndependent(nodeA, nodeB, evidence, null);
     }
-    // Recursive Bayes Ball algorithm
-    private boolean bayesBall(String current, String target, Map<String, String> evidence, Set<String> visited, String direction) {
-        if (visited.contains(current + direction)) {
-            return false;
-        }
-        visited.add(current + direction);
-
-        NodeBase currentNode = bn.getNode(current);
+    // Checks independence and adds the nodes visited to stats, unless stats is null
+    public boolean areIndependent(String nodeA, String nodeB, Map<String, String> evidence, QueryStats stats) {
+        return !reachable(network.id(nodeA), network.observed(evidence.keySet()), stats).get(network.id(nodeB));
+    }
+    // Method to check if two node ids are independent given the observed variables
+    public boolean areIndependent(int nodeA, int nodeB, boolean[] observed) {
+        return !reachable(nodeA, observed).get(nodeB);
+    }
+    // Returns every node the ball reaches from the source given the observed variables (the source included)
+    public BitSet reachable(int source, boolean[] observed) {
+        return reachable(source, observed, null);
+    }
+    // Iterative Bayes Ball: each node is visited at most once from above and once from below, so it runs in linear time
+    // The visits are added to stats, unless stats is null
+    public BitSet reachable(int source, boolean[] observed, QueryStats stats) {
+        int n = network.size();
+        BitSet[] visited = {new BitSet(n), new BitSet(n)};  // Top and bottom marks, indexed by UP and DOWN
+        BitSet reached = new BitSet(n);
+        int[] queue = new int[2 * n];  // Pending visits, encoded as node * 2 + direction
+        int size = 0;
+        visited[DOWN].set(source);
+        queue[size++] = source * 2 + DOWN;
 
-        if (current.equals(target)) {
-            return true;
-        }
+        int visits = 0;
+        while (size > 0) {
+            visits++;
+            int visit = queue[--size];
+            int current = visit >> 1;
+            int direction = visit & 1;
+            reached.set(current);
 
-        if (evidence.containsKey(current)) {
-            if (direction.equals("up")) {
-                // Traverse to parents if current node is in the evidence and direction is up
-                for (NodeBase parent : currentNode.parents) {
-                    if (!parent.name.equals(current) && bayesBall(parent.name, target, evidence, visited, "down")) {
-                        return true;
+            if (observed[current]) {
+                if (direction == UP) {
+                    // Bounce back to the parents if current node is in the evidence and the ball came from a parent
+                    for (int parent : network.parents[current]) {
+                        size = push(parent, DOWN, visited, queue, size);
                     }
                 }
-            } else if (direction.equals("down")) {
-                return false; // Stop descending if current node is in the evidence and direction is down
-            }
-        } else {
-            if (direction.equals("up")) {
-                // Traverse to children if current node is not in the evidence and direction is up
-                for (NodeBase child : currentNode.children) {
-                    if (bayesBall(child.name, target, evidence, visited, "up")) {
-                        return true;
-                    }
-                }
-            } else if (direction.equals("down")) {
-                // Traverse to children and parents if current node is not in the evidence and direction is down
-                for (NodeBase child : currentNode.children) {
-                    if (bayesBall(child.name, target, evidence, visited, "up")) {
-                        return true;
-                    }
+                // Stop descending if current node is in the evidence and the ball came from a child
+            } else {
+                // Pass to the children whichever way the ball came, and to the parents if it came from a child
+                for (int child : network.children[current]) {
+                    size = push(child, UP, visited, queue, size);
                 }
-                for (NodeBase parent : currentNode.parents) {
-                    if (bayesBall(parent.name, target, evidence, visited, "down")) {
-                        return true;
+                if (direction == DOWN) {
+                    for (int parent : network.parents[current]) {
+                        size = push(parent, DOWN, visited, queue, size);
                     }
                 }
             }
         }
-
-        return false;
+        if (stats != null) {
+            stats.nodesVisited += visits;
+        }
+        return reached;
+    }
+    // Queues a visit unless the node was already visited in that direction, returning the new queue size
+    private static int push(int node, int direction, BitSet[] visited, int[] queue, int size) {
+        if (!visited[direction].get(node)) {
+            visited[direction].set(node);
+            queue[size++] = node * 2 + direction;
+        }
+        return size;
     }
-}
\ No newline at end of file
+}
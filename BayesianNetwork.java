@@ -16,11 +16,44 @@ import java.io.IOException;
 // Class to represent a Bayesian Network
 public class BayesianNetwork {
     private HashMap<String, NodeBase> nodes;
+    private volatile CompiledNetwork compiled;  // Integer-indexed view used by the inference algorithms
+    private boolean loaded;  // Set once a loader has read the whole file
+    private volatile JunctionTree junctionTree;  // Built on first use by the junction tree engine
 
     // Constructor to initialize the Bayesian Network from an XML file
     public BayesianNetwork(String path) {
+        this(path, false);
+    }
+    // Constructor choosing between the DOM parser and the single-pass streaming loader
+    public BayesianNetwork(String path, boolean streaming) {
+        this.nodes = new HashMap<String, NodeBase>();
+        if (streaming) {
+            parseXMLStreaming(path);
+        } else {
+            parseXML(path);
+        }
+    }
+    // Constructor rebuilding the nodes of an already compiled network (e.g. a snapshot)
+    // The CPTs stay in the compiled view, so these nodes carry the structure only
+    BayesianNetwork(CompiledNetwork compiled) {
         this.nodes = new HashMap<String, NodeBase>();
-        parseXML(path);
+        for (int var = 0; var < compiled.size(); var++) {
+            addNode(new NodeBase(compiled.names[var], new ArrayList<>(Arrays.asList(compiled.outcomes[var]))));
+        }
+        for (int var = 0; var < compiled.size(); var++) {
+            NodeBase node = getNode(compiled.names[var]);
+            for (int parent : compiled.parents[var]) {
+                node.addParent(getNode(compiled.names[parent]));
+            }
+            for (int child : compiled.children[var]) {
+                node.addChild(getNode(compiled.names[child]));
+            }
+        }
+        for (NodeBase node : nodes.values()) {
+            node.freeze();
+        }
+        this.compiled = compiled;
+        this.loaded = true;
     }
     // Returns all nodes in the network
     public HashMap<String, NodeBase> getNodes() {
@@ -33,6 +66,53 @@ public class BayesianNetwork {
     // Adds a node to the network
     public void addNode(NodeBase nodeBase) {
         this.nodes.put(nodeBase.name, nodeBase);
+        this.compiled = null;
+    }
+    // Returns the compiled view of the network, compiling it if the nodes changed since the last call
+    public CompiledNetwork getCompiled() {
+        CompiledNetwork result = compiled;
+        if (result == null) {
+            result = new CompiledNetwork(nodes.values());
+            compiled = result;
+        }
+        return result;
+    }
+
+    // Returns the junction tree of the network, building it on first use
+    public JunctionTree getJunctionTree() {
+        CompiledNetwork current = getCompiled();
+        JunctionTree result = junctionTree;
+        if (result == null || result.network != current) {
+            result = new JunctionTree(current);
+            junctionTree = result;
+        }
+        return result;
+    }
+
+    // Parses the XML file in a single streaming pass, without building a DOM
+    public void parseXMLStreaming(String path) {
+        if (StaxNetworkLoader.load(this, path)) {
+            completeNetwork();
+        }
+    }
+    // Links children to their parents, freezes the nodes and compiles the integer-indexed view
+    void completeNetwork() {
+        // Set children for each node
+        for (NodeBase node : nodes.values()) {
+            for (NodeBase parent : node.parents) {
+                parent.addChild(node);
+            }
+        }
+        // The network is complete: freeze the nodes and compile the integer-indexed view
+        for (NodeBase node : nodes.values()) {
+            node.freeze();
+        }
+        this.compiled = new CompiledNetwork(nodes.values());
+        this.loaded = true;
+    }
+    // Returns true if the network was read completely (false after a parse error)
+    boolean isLoaded() {
+        return loaded;
     }
 
     // Parses the XML file to construct the network
@@ -110,12 +190,7 @@ public class BayesianNetwork {
                         }
                     }
                 }
-                // Set children for each node
-                for (NodeBase node : nodes.values()) {
-                    for (NodeBase parent : node.parents) {
-                        parent.addChild(node);
-                    }
-                }
+                completeNetwork();
             } catch (SAXException e) {
                 e.printStackTrace();
             } catch (IOException e) {
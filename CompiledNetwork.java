@@ -0,0 +1,162 @@
+import java.nio.DoubleBuffer;
+import java.util.*;
+
+// Immutable, integer-indexed view of a Bayesian Network, built once after parsing
+// Variables and outcomes get dense ids, so queries can run without looking anything up by name
+public class CompiledNetwork {
+    public static final int NO_EVIDENCE = -1;  // Marks an unobserved variable in an evidence array
+
+    final String[] names;
+    final String[][] outcomes;
+    final int[] cardinalities;
+    final int[][] parents;
+    final int[][] children;
+    final DoubleBuffer[] cpts;  // Flat CPTs in the XML TABLE order (parents in GIVEN order, the node's outcome changing fastest)
+    final BitSet[] ancestors;  // Ancestors of each node, the node itself included
+    private final Map<String, Integer> ids;
+
+    // Compiles the given nodes; ids follow the iteration order of the collection
+    public CompiledNetwork(Collection<NodeBase> nodes) {
+        this(names(nodes), outcomes(nodes), parentIds(nodes), tables(nodes));
+    }
+    // Builds the view from its variables, parents (by id) and CPTs, which may be views of a memory-mapped snapshot
+    CompiledNetwork(String[] names, String[][] outcomes, int[][] parents, DoubleBuffer[] cpts) {
+        int n = names.length;
+        this.names = names;
+        this.outcomes = outcomes;
+        this.parents = parents;
+        this.cpts = cpts;
+        this.cardinalities = new int[n];
+        this.ids = new HashMap<>();
+        for (int id = 0; id < n; id++) {
+            cardinalities[id] = outcomes[id].length;
+            ids.put(names[id], id);
+        }
+        // Children are listed in id order, the order in which the loaders link them
+        int[] childCounts = new int[n];
+        for (int id = 0; id < n; id++) {
+            for (int parent : parents[id]) {
+                childCounts[parent]++;
+            }
+        }
+        this.children = new int[n][];
+        for (int id = 0; id < n; id++) {
+            children[id] = new int[childCounts[id]];
+            childCounts[id] = 0;
+        }
+        for (int id = 0; id < n; id++) {
+            for (int parent : parents[id]) {
+                children[parent][childCounts[parent]++] = id;
+            }
+        }
+        this.ancestors = ancestorClosures();
+    }
+
+    private static String[] names(Collection<NodeBase> nodes) {
+        return nodes.stream().map(node -> node.name).toArray(String[]::new);
+    }
+
+    private static String[][] outcomes(Collection<NodeBase> nodes) {
+        return nodes.stream().map(node -> node.outcomes.toArray(new String[0])).toArray(String[][]::new);
+    }
+
+    private static int[][] parentIds(Collection<NodeBase> nodes) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (NodeBase node : nodes) {
+            ids.put(node.name, ids.size());
+        }
+        return nodes.stream().map(node -> node.parents.stream().mapToInt(parent -> ids.get(parent.name)).toArray()).toArray(int[][]::new);
+    }
+
+    private static DoubleBuffer[] tables(Collection<NodeBase> nodes) {
+        DoubleBuffer[] tables = new DoubleBuffer[nodes.size()];
+        int id = 0;
+        for (NodeBase node : nodes) {
+            if (node.table == null) {
+                throw new IllegalArgumentException("No conditional probability table defined for " + node.name);
+            }
+            tables[id++] = DoubleBuffer.wrap(node.table.clone()).asReadOnlyBuffer();
+        }
+        return tables;
+    }
+    // Computes every node's ancestor set once, visiting parents before their children
+    private BitSet[] ancestorClosures() {
+        int n = names.length;
+        BitSet[] closures = new BitSet[n];
+        int[] waiting = new int[n];  // Parents of each node whose closure is not known yet
+        int[] ready = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int node = 0; node < n; node++) {
+            waiting[node] = parents[node].length;
+            if (waiting[node] == 0) {
+                ready[tail++] = node;
+            }
+        }
+        while (head < tail) {
+            int node = ready[head++];
+            BitSet closure = new BitSet(node + 1);
+            closure.set(node);
+            for (int parent : parents[node]) {
+                closure.or(closures[parent]);
+            }
+            closures[node] = closure;
+            for (int child : children[node]) {
+                if (--waiting[child] == 0) {
+                    ready[tail++] = child;
+                }
+            }
+        }
+        if (tail < n) {
+            throw new IllegalArgumentException("The network contains a directed cycle");
+        }
+        return closures;
+    }
+    // Returns the number of variables in the network
+    public int size() {
+        return names.length;
+    }
+    // Returns the id of a variable by name
+    public int id(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            throw new IllegalArgumentException("Variable " + name + " not found in the network");
+        }
+        return id;
+    }
+    // Returns the id of an outcome of a variable
+    public int outcomeId(int var, String outcome) {
+        for (int i = 0; i < outcomes[var].length; i++) {
+            if (outcomes[var][i].equals(outcome)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Outcome " + outcome + " not found for variable " + names[var]);
+    }
+    // Maps a list of variable names to their ids
+    public int[] ids(List<String> names) {
+        int[] result = new int[names.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = id(names.get(i));
+        }
+        return result;
+    }
+    // Converts evidence by name into an array holding the observed outcome of each variable (or NO_EVIDENCE)
+    public int[] evidence(Map<String, String> evidence) {
+        int[] observed = new int[names.length];
+        Arrays.fill(observed, NO_EVIDENCE);
+        for (Map.Entry<String, String> entry : evidence.entrySet()) {
+            int var = id(entry.getKey());
+            observed[var] = outcomeId(var, entry.getValue());
+        }
+        return observed;
+    }
+    // Marks the variables that appear in the evidence, whatever their observed value
+    public boolean[] observed(Collection<String> evidenceVars) {
+        boolean[] observed = new boolean[names.length];
+        for (String name : evidenceVars) {
+            observed[id(name)] = true;
+        }
+        return observed;
+    }
+}
@@ -0,0 +1,32 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Supplies the factors of a variable elimination, so they can be reused from earlier queries instead of recomputed
+// An implementation returns factors equal to the ones the direct computation would build and adds the same counts.
+// The factors it returns may be shared, so the elimination never modifies them.
+interface EliminationMemo {
+    // Computes every factor directly
+    EliminationMemo DIRECT = new EliminationMemo() {
+        @Override
+        public Factor cpt(CompiledNetwork network, int node, int[] evidence) {
+            return new Factor(network, node, evidence).compact();
+        }
+
+        @Override
+        public Factor multiply(Factor f1, Factor f2, AtomicInteger mulOpers) {
+            return Factor.multiply(f1, f2, mulOpers);
+        }
+
+        @Override
+        public Factor multiplyAndSumOut(List<Factor> factors, int var, AtomicInteger mulOpers, AtomicInteger addOpers) {
+            return Factor.multiplyAndSumOut(factors, var, mulOpers, addOpers);
+        }
+    };
+
+    // The CPT of a node restricted to the evidence
+    Factor cpt(CompiledNetwork network, int node, int[] evidence);
+
+    Factor multiply(Factor f1, Factor f2, AtomicInteger mulOpers);
+
+    Factor multiplyAndSumOut(List<Factor> factors, int var, AtomicInteger mulOpers, AtomicInteger addOpers);
+}
@@ -0,0 +1,184 @@
+import java.util.*;
+
+// Chooses variable elimination orders greedily on the interaction graph of a set of factors
+// Two variables are neighbours when some factor mentions both; observed variables are left out, since they are fixed
+public class EliminationOrdering {
+
+    // Greedy scores: the variable with the lowest score is eliminated next
+    public enum Heuristic {
+        MIN_DEGREE("min-degree"),                // Number of neighbours
+        MIN_FILL("min-fill"),                    // Number of edges elimination would add between neighbours
+        MIN_WEIGHT("min-weight"),                // Size of the factor elimination would create
+        WEIGHTED_MIN_FILL("weighted-min-fill");  // Added edges, each weighted by the product of its two cardinalities
+
+        private final String label;
+
+        Heuristic(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+        // Returns the heuristic with the given label
+        public static Heuristic fromLabel(String label) {
+            for (Heuristic heuristic : values()) {
+                if (heuristic.label.equals(label)) {
+                    return heuristic;
+                }
+            }
+            throw new IllegalArgumentException("Unknown elimination order heuristic " + label);
+        }
+    }
+
+    private final int[] cardinalities;  // Observed variables count as a single outcome
+    private final BitSet[] neighbours;
+
+    // Builds the interaction graph of the given factor scopes
+    public EliminationOrdering(CompiledNetwork network, List<int[]> scopes, int[] evidence) {
+        this.cardinalities = new int[network.size()];
+        for (int var = 0; var < cardinalities.length; var++) {
+            cardinalities[var] = evidence[var] != CompiledNetwork.NO_EVIDENCE ? 1 : network.cardinalities[var];
+        }
+        this.neighbours = new BitSet[network.size()];
+        for (int var = 0; var < neighbours.length; var++) {
+            neighbours[var] = new BitSet(neighbours.length);
+        }
+        for (int[] scope : scopes) {
+            for (int a : scope) {
+                if (evidence[a] != CompiledNetwork.NO_EVIDENCE) {
+                    continue;
+                }
+                for (int b : scope) {
+                    if (a != b && evidence[b] == CompiledNetwork.NO_EVIDENCE) {
+                        neighbours[a].set(b);
+                    }
+                }
+            }
+        }
+    }
+    // Builds the interaction graph of the whole network (each node together with its parents)
+    public EliminationOrdering(CompiledNetwork network, int[] evidence) {
+        this(network, families(network), evidence);
+    }
+    // Builds the interaction graph of the factors left after pruning
+    static EliminationOrdering forFactors(CompiledNetwork network, List<Factor> factors, int[] evidence) {
+        List<int[]> scopes = new ArrayList<>();
+        for (Factor factor : factors) {
+            scopes.add(factor.variables);
+        }
+        return new EliminationOrdering(network, scopes, evidence);
+    }
+    // Returns the scope of every CPT of the network
+    private static List<int[]> families(CompiledNetwork network) {
+        List<int[]> families = new ArrayList<>();
+        for (int node = 0; node < network.size(); node++) {
+            int[] family = Arrays.copyOf(network.parents[node], network.parents[node].length + 1);
+            family[family.length - 1] = node;
+            families.add(family);
+        }
+        return families;
+    }
+
+    // Orders the given variables greedily; ties keep the order in which the variables were given
+    public int[] order(int[] variables, Heuristic heuristic) {
+        BitSet[] graph = copyGraph();
+        int[] order = new int[variables.length];
+        boolean[] done = new boolean[variables.length];
+        int[] position = new int[graph.length];  // Index of each candidate in variables, or -1
+        Arrays.fill(position, -1);
+        double[] scores = new double[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            position[variables[i]] = i;
+            scores[i] = score(graph, variables[i], heuristic);
+        }
+
+        for (int step = 0; step < variables.length; step++) {
+            int best = -1;
+            for (int i = 0; i < variables.length; i++) {
+                if (!done[i] && (best == -1 || scores[i] < scores[best])) {
+                    best = i;
+                }
+            }
+            int var = variables[best];
+            order[step] = var;
+            done[best] = true;
+
+            // Only the neighbours (and, for fill scores, their neighbours) can change score
+            BitSet affected = (BitSet) graph[var].clone();
+            eliminate(graph, var);
+            if (heuristic == Heuristic.MIN_FILL || heuristic == Heuristic.WEIGHTED_MIN_FILL) {
+                BitSet direct = (BitSet) affected.clone();
+                for (int u = direct.nextSetBit(0); u >= 0; u = direct.nextSetBit(u + 1)) {
+                    affected.or(graph[u]);
+                }
+            }
+            for (int u = affected.nextSetBit(0); u >= 0; u = affected.nextSetBit(u + 1)) {
+                if (position[u] > -1 && !done[position[u]]) {
+                    scores[position[u]] = score(graph, u, heuristic);
+                }
+            }
+        }
+        return order;
+    }
+
+    // Returns the clique formed by each elimination (the variable together with its neighbours at that point)
+    public List<int[]> cliques(int[] order) {
+        BitSet[] graph = copyGraph();
+        List<int[]> cliques = new ArrayList<>();
+        for (int var : order) {
+            BitSet clique = (BitSet) graph[var].clone();
+            clique.set(var);
+            cliques.add(clique.stream().toArray());
+            eliminate(graph, var);
+        }
+        return cliques;
+    }
+
+    private BitSet[] copyGraph() {
+        BitSet[] graph = new BitSet[neighbours.length];
+        for (int var = 0; var < graph.length; var++) {
+            graph[var] = (BitSet) neighbours[var].clone();
+        }
+        return graph;
+    }
+    // Connects the neighbours of a variable to each other and removes the variable from the graph
+    private static void eliminate(BitSet[] graph, int var) {
+        BitSet around = graph[var];
+        for (int u = around.nextSetBit(0); u >= 0; u = around.nextSetBit(u + 1)) {
+            graph[u].or(around);
+            graph[u].clear(u);
+            graph[u].clear(var);
+        }
+        graph[var] = new BitSet();
+    }
+
+    private double score(BitSet[] graph, int var, Heuristic heuristic) {
+        BitSet around = graph[var];
+        switch (heuristic) {
+            case MIN_DEGREE:
+                return around.cardinality();
+            case MIN_WEIGHT:
+                return cardinalities[var] * weight(around);
+            default:
+                // Count (or weigh) every pair of neighbours that is not connected yet
+                double fill = 0;
+                for (int u = around.nextSetBit(0); u >= 0; u = around.nextSetBit(u + 1)) {
+                    BitSet missing = (BitSet) around.clone();
+                    missing.andNot(graph[u]);
+                    for (int w = missing.nextSetBit(u + 1); w >= 0; w = missing.nextSetBit(w + 1)) {
+                        fill += heuristic == Heuristic.MIN_FILL ? 1 : (double) cardinalities[u] * cardinalities[w];
+                    }
+                }
+                return fill;
+        }
+    }
+    // Product of the cardinalities of a set of variables
+    private double weight(BitSet vars) {
+        double weight = 1;
+        for (int u = vars.nextSetBit(0); u >= 0; u = vars.nextSetBit(u + 1)) {
+            weight *= cardinalities[u];
+        }
+        return weight;
+    }
+}
@@ -0,0 +1,259 @@
+import java.util.*;
+
+// Dry run of variable elimination over factor scopes and cardinalities, before any table is allocated
+// The planner builds and sorts its symbolic factors over the pruned network and joins them exactly as VariableElimination
+// does, so the multiplications it predicts are the ones the query will report and its peak is the largest table it builds.
+// In sparse mode a step with a sparse input stores each partial product (Factor.multiplyAndSumOut), so the plan counts
+// every partial product toward the peak; skipped zero cells then make both the peak and the multiplications upper bounds.
+// A query whose plan does not fit the budget can be re-planned with a heuristic order or rejected before it runs.
+public class EliminationPlanner {
+    static final long MAX_CELLS = Integer.MAX_VALUE - 8;  // Largest double[] the JVM can allocate
+
+    private final CompiledNetwork network;
+    private final long maxFactorSize;      // Cells of the largest table a plan may build
+    private final long maxMultiplications;  // 0 for no limit
+
+    public EliminationPlanner(CompiledNetwork network, long maxFactorSize, long maxMultiplications) {
+        this.network = network;
+        this.maxFactorSize = Math.min(maxFactorSize, MAX_CELLS);
+        this.maxMultiplications = maxMultiplications;
+    }
+
+    // The predicted cost of answering the query variables with an elimination order and heuristic
+    public static final class Plan {
+        public final EliminationOrdering.Heuristic heuristic;  // Null when the given order is used
+        public final int[] order;        // Hidden variables in the order they are eliminated, after pruning
+        public final long peakFactorSize;  // Cells of the largest table built
+        public final long multiplications;
+
+        Plan(EliminationOrdering.Heuristic heuristic, int[] order, long peakFactorSize, long multiplications) {
+            this.heuristic = heuristic;
+            this.order = order;
+            this.peakFactorSize = peakFactorSize;
+            this.multiplications = multiplications;
+        }
+
+        public String describe(CompiledNetwork network) {
+            StringBuilder names = new StringBuilder();
+            for (int var : order) {
+                names.append(names.length() > 0 ? "-" : "").append(network.names[var]);
+            }
+            return (heuristic != null ? heuristic.getLabel() : "given") + " order " + names
+                    + ", peak factor " + peakFactorSize + ", multiplications " + multiplications;
+        }
+    }
+
+    // Thrown for a query no plan answers within the budget
+    public static final class OverBudgetException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        public OverBudgetException(String message) {
+            super(message);
+        }
+    }
+
+    // Returns true if the plan stays within the budget
+    public boolean fits(Plan plan) {
+        return plan.peakFactorSize <= maxFactorSize && (maxMultiplications <= 0 || plan.multiplications <= maxMultiplications);
+    }
+
+    // Plans the query as asked and, if that plan is over budget, with each heuristic in turn
+    // Returns the first plan that fits, or the cheapest one tried if none does. Pruning does not depend on the order, so
+    // every plan shares the pruned variables the caller found with VariableElimination.prune and passes on to the run.
+    public Plan choose(int[] queryVars, int[] evidence, int[] eliminationOrder, BitSet pruned, EliminationOrdering.Heuristic heuristic) {
+        Plan best = plan(queryVars, evidence, eliminationOrder, pruned, heuristic);
+        if (fits(best)) {
+            return best;
+        }
+        for (EliminationOrdering.Heuristic alternative : EliminationOrdering.Heuristic.values()) {
+            if (alternative == heuristic) {
+                continue;
+            }
+            Plan plan = plan(queryVars, evidence, eliminationOrder, pruned, alternative);
+            if (fits(plan)) {
+                return plan;
+            }
+            if (plan.peakFactorSize < best.peakFactorSize) {
+                best = plan;
+            }
+        }
+        return best;
+    }
+
+    // Returns the plan chosen for a query, or throws if even that cheapest plan is over budget
+    public Plan require(Plan plan) {
+        if (!fits(plan)) {
+            throw new OverBudgetException("over budget, best plan has peak factor " + plan.peakFactorSize
+                    + " and " + plan.multiplications + " multiplications");
+        }
+        return plan;
+    }
+
+    // Simulates VariableElimination.marginals on scopes only
+    public Plan plan(int[] queryVars, int[] evidence, int[] eliminationOrder, EliminationOrdering.Heuristic heuristic) {
+        return plan(queryVars, evidence, eliminationOrder, VariableElimination.prune(network, queryVars, evidence, eliminationOrder, null), heuristic);
+    }
+    // Simulates the run with the variables prune found for the query
+    public Plan plan(int[] queryVars, int[] evidence, int[] eliminationOrder, BitSet pruned, EliminationOrdering.Heuristic heuristic) {
+        int[] order = VariableElimination.remaining(eliminationOrder, pruned);
+        Cost cost = new Cost();
+
+        List<Scope> scopes = new ArrayList<>();
+        for (int node = 0; node < network.size(); node++) {
+            if (VariableElimination.mentionsAny(network, node, pruned)) {
+                continue;
+            }
+            int[] parents = network.parents[node];
+            int[] variables = Arrays.copyOf(parents, parents.length + 1);
+            variables[parents.length] = node;
+            int[] cardinalities = new int[variables.length];
+            for (int i = 0; i < variables.length; i++) {
+                cardinalities[i] = evidence[variables[i]] != CompiledNetwork.NO_EVIDENCE ? 1 : network.cardinalities[variables[i]];
+            }
+            Scope scope = new Scope(variables, cardinalities);
+            cost.built(scope.size);
+            if (scope.size > 1) {
+                scopes.add(scope);
+            }
+        }
+        if (heuristic != null) {
+            List<int[]> variables = new ArrayList<>();
+            for (Scope scope : scopes) {
+                variables.add(scope.variables);
+            }
+            order = new EliminationOrdering(network, variables, evidence).order(order, heuristic);
+        }
+        for (int var : order) {
+            eliminate(scopes, var, cost);
+        }
+
+        for (int queryVar : queryVars) {
+            List<Scope> remaining = scopes;
+            if (queryVars.length > 1) {
+                remaining = new ArrayList<>(scopes);
+                for (int other : queryVars) {
+                    if (other != queryVar) {
+                        eliminate(remaining, other, cost);
+                    }
+                }
+            }
+            if (remaining.isEmpty()) {
+                continue;
+            }
+            Scope result = remaining.get(0);
+            for (int i = 1; i < remaining.size(); i++) {
+                result = result.join(remaining.get(i));
+                cost.multiplications += result.size;
+                cost.built(result.size);
+            }
+        }
+        return new Plan(heuristic, order, cost.peak, cost.multiplications);
+    }
+
+    // Replaces the scopes that mention a variable with the scope of their product summed over it, as the fused step does
+    private void eliminate(List<Scope> scopes, int var, Cost cost) {
+        boolean storesProducts = Factor.sparseDensity > 0;
+        List<Scope> relevant = new ArrayList<>();
+        for (Scope scope : scopes) {
+            if (scope.indexOf(var) > -1) {
+                relevant.add(scope);
+            }
+        }
+        if (relevant.isEmpty()) {
+            return;
+        }
+        Collections.sort(relevant);
+        scopes.removeAll(relevant);
+        Scope joined = relevant.get(0);
+        for (int i = 1; i < relevant.size(); i++) {
+            joined = joined.join(relevant.get(i));
+            cost.multiplications += joined.size;  // The dense fused step counts the partial products but never stores them
+            if (storesProducts) {
+                cost.built(joined.size);
+            }
+        }
+        Scope result = joined.without(var);
+        cost.built(result.size);
+        scopes.add(result);
+        Collections.sort(scopes);
+    }
+
+    private static final class Cost {
+        long peak;
+        long multiplications;
+
+        void built(long size) {
+            peak = Math.max(peak, size);
+        }
+    }
+
+    // The variables of a factor in table order, with their cardinalities (1 for an observed variable)
+    private final class Scope implements Comparable<Scope> {
+        final int[] variables;
+        final int[] cardinalities;
+        final long size;  // Saturates instead of overflowing
+
+        Scope(int[] variables, int[] cardinalities) {
+            this.variables = variables;
+            this.cardinalities = cardinalities;
+            long cells = 1;
+            for (int card : cardinalities) {
+                cells = cells > Long.MAX_VALUE / card ? Long.MAX_VALUE : cells * card;
+            }
+            this.size = cells;
+        }
+
+        int indexOf(int var) {
+            for (int i = 0; i < variables.length; i++) {
+                if (variables[i] == var) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        // The scope of the product with another factor: these variables, then the new ones of the other
+        Scope join(Scope other) {
+            int[] joinVariables = Arrays.copyOf(variables, variables.length + other.variables.length);
+            int[] joinCardinalities = Arrays.copyOf(cardinalities, joinVariables.length);
+            int n = variables.length;
+            for (int i = 0; i < other.variables.length; i++) {
+                if (indexOf(other.variables[i]) == -1) {
+                    joinVariables[n] = other.variables[i];
+                    joinCardinalities[n++] = other.cardinalities[i];
+                }
+            }
+            return new Scope(Arrays.copyOf(joinVariables, n), Arrays.copyOf(joinCardinalities, n));
+        }
+
+        Scope without(int var) {
+            int removed = indexOf(var);
+            int[] newVariables = new int[variables.length - 1];
+            int[] newCardinalities = new int[variables.length - 1];
+            for (int i = 0, j = 0; i < variables.length; i++) {
+                if (i != removed) {
+                    newVariables[j] = variables[i];
+                    newCardinalities[j++] = cardinalities[i];
+                }
+            }
+            return new Scope(newVariables, newCardinalities);
+        }
+
+        // The order of Factor.compareTo: fewer cells first, then the larger sum of first letters of the variable names
+        @Override
+        public int compareTo(Scope other) {
+            int bySize = Long.compare(size, other.size);
+            if (bySize != 0) {
+                return bySize;
+            }
+            return Integer.compare(letters(other), letters(this));
+        }
+
+        private int letters(Scope scope) {
+            int sum = 0;
+            for (int var : scope.variables) {
+                sum += network.names[var].charAt(0);
+            }
+            return sum;
+        }
+    }
+}
@@ -1,28 +1,236 @@
-
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
 // Class to handle input processing and queries
 public class Ex1 {
+    // Inference engines a network can be queried with
+    enum Engine {
+        VE("ve"),          // Variable elimination in the order given on the query line
+        JT("jt"),          // Junction tree, calibrated once per evidence set
+        LW("lw"),          // Likelihood weighting (approximate)
+        GIBBS("gibbs");    // Gibbs sampling (approximate)
+
+        private final String label;
+
+        Engine(String label) {
+            this.label = label;
+        }
+        // Returns the engine with the given label
+        static Engine fromLabel(String label) {
+            for (Engine engine : values()) {
+                if (engine.label.equals(label)) {
+                    return engine;
+                }
+            }
+            throw new IllegalArgumentException("Unknown inference engine " + label);
+        }
+    }
+
+    private static final int QUERIES_PER_THREAD = 4;  // Queries in flight per worker before the reader waits for the oldest
 
+    private static Engine defaultEngine = Engine.VE;  // Engine of networks whose line does not name one
+    private static boolean streamingLoader;  // Loads networks with the StAX loader instead of the DOM parser
+    private static boolean useSnapshots;  // Loads networks through binary snapshots stored next to the XML files
+    private static QueryCache queryCache;  // Answers of earlier queries, null when caching is disabled
+    private static EliminationOrdering.Heuristic orderHeuristic;  // Replaces the order given on the query line, when set
+    private static boolean reportOrder;
+    private static QueryStats.Summary querySummary;  // Statistics of every query, null when instrumentation is disabled
+    private static boolean printQueryStats;  // Prints the record of each query as well as the final histograms
+    private static NetworkRegistry networkRegistry;  // Networks already loaded, null when every network line reloads
+    private static long approximateAbove;  // VE queries whose planned largest factor exceeds this are sampled, 0 never
+    private static ApproximateInference.Method samplingMethod = ApproximateInference.Method.LIKELIHOOD_WEIGHTING;
+    private static long samples = 100000;  // Sampling stops after this many samples, this many milliseconds
+    private static long timeBudget;        // or once the 95% confidence interval is narrower than this width
+    private static double intervalWidth;
+    private static boolean incremental;  // VE queries reuse the factors of the previous query on the same thread
+    private static final ThreadLocal<InferenceSession> sessions = new ThreadLocal<>();
+    private static long maxFactorSize;       // Cells of the largest factor a VE query may build, and the multiplications
+    private static long maxMultiplications;  // it may make (0 for no limit)
+    private static boolean reportPlan;
+    private static boolean planQueries;  // VE queries are planned only when a budget, a plan report or sampling asks for it
+    private static FactorMemo factorMemo;  // Intermediate VE factors shared between queries, null when disabled
+
+    // Usage: java Ex1 [--engine=ve|jt|lw|gibbs] [--loader=dom|stax] [--snapshot] [--parallelism=N] [--cache=N] [--order=HEURISTIC] [--report-order] [--stats[=queries]] [--server=stdio|PORT] [--network-cache=MB] [--factor-threshold=N]
+    //               [--approximate-above=N] [--sampler=lw|gibbs] [--samples=N] [--time-budget=MS] [--ci-width=W] [--incremental]
+    //               [--max-factor=N] [--max-multiplications=N] [--report-plan] [--sparse[=DENSITY]] [--factor-memo=MB]
+    //               [--kernels=auto|scalar|vector]
+    //   --engine        ve, jt, lw or gibbs for networks whose input line does not name one ("net.xml jt" picks it per network)
+    //   --loader        stax reads the XML in one streaming pass instead of building a DOM
+    //   --snapshot      loads each network from a memory-mapped <file>.xml.bnc, rewriting it when the XML changed
+    //   --parallelism   N > 1 answers queries on N worker threads, 0 uses one per core
+    //   --cache         keeps the answers of the last N distinct queries
+    //   --order         min-degree, min-fill, min-weight or weighted-min-fill chooses the elimination order
+    //   --report-order  prints the largest factor VE builds with the given and with the heuristic order to stderr
+    //   --stats         prints histograms of query timings, factor sizes and Bayes Ball visits to stderr at the end;
+    //                   --stats=queries also prints one record per query as it is answered
+    //   --server        answers queries sent on standard input, or on a local port, instead of reading input.txt
+    //   --network-cache keeps loaded networks up to about MB megabytes (default 256), 0 reloads every network line
+    //   --factor-threshold  factors of at least N cells (default 65536) are computed on all cores, 0 keeps them on one
+    //   --approximate-above  samples VE queries whose plan builds a factor of more than N cells
+    //   --sampler       method of those queries, lw (likelihood weighting, default) or gibbs
+    //   --samples, --time-budget, --ci-width  stop sampling after N samples (default 100000, 0 for no limit),
+    //                   after MS milliseconds, or once the 95% confidence interval is narrower than W
+    //                   (sampled answers report 0 additions and 0 multiplications)
+    //   --incremental   VE queries rebuild only the factors that depend on evidence changed since the previous query
+    //   --max-factor, --max-multiplications  VE queries are planned before they run (as they are with --report-plan or
+    //                   --approximate-above); a plan predicted to build a factor of more than N cells (default: a quarter
+    //                   of the heap shared among the --parallelism workers) or to make more than N multiplications
+    //                   (default no limit) is replaced by a heuristic order that fits, or the query is rejected on stderr
+    //                   and writes no line
+    //   --report-plan   prints the plan of each VE query, its predicted largest factor and multiplications to stderr
+    //   --sparse        VE stores factors with at most DENSITY (default 0.25) of their cells non-zero as sparse lists and
+    //                   skips the zero cells; the counts are then those of the operations actually performed
+    //   --factor-memo   keeps up to about MB megabytes of intermediate VE factors, so a later query that derives the same
+    //                   factor (the same CPTs, evidence on them and eliminated variables) reuses it with its counts;
+    //                   it cannot be combined with --incremental
+    //   --kernels       loops of the dense factor operations: vector (the Vector API, see vector/VectorKernels.java),
+    //                   scalar, or auto (default), which uses vector when it can be loaded
+    // Besides "P(X=x|E=e) order", "P(X|E=e) order" answers the posterior of every outcome of X and "P(X,Y|E=e) order"
+    // the posteriors of X and of Y, each on one line: "X=x1:0.12345 X=x2:0.87655,additions,multiplications"
     public static void main(String[] args) throws IOException {
         String strFromUser = "input.txt";
-        BufferedWriter output = new BufferedWriter(new FileWriter("output.txt", true));
-        readInputFile(strFromUser, output);
-        output.close();
+        Map<String, String> options = parseOptions(args);
+        if (options.containsKey("engine")) {
+            defaultEngine = Engine.fromLabel(options.get("engine"));
+        }
+        streamingLoader = options.getOrDefault("loader", "dom").equals("stax");
+        useSnapshots = options.containsKey("snapshot");
+        int parallelism = Integer.parseInt(options.getOrDefault("parallelism", "1"));
+        if (parallelism == 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        int cacheSize = Integer.parseInt(options.getOrDefault("cache", "0"));
+        if (cacheSize > 0) {
+            queryCache = new QueryCache(cacheSize);
+        }
+        if (options.containsKey("order")) {
+            orderHeuristic = EliminationOrdering.Heuristic.fromLabel(options.get("order"));
+        }
+        reportOrder = options.containsKey("report-order");
+        if (options.containsKey("stats")) {
+            querySummary = new QueryStats.Summary();
+            printQueryStats = options.get("stats").equals("queries");
+        }
+        if (options.containsKey("factor-threshold")) {
+            Factor.parallelThreshold = Integer.parseInt(options.get("factor-threshold"));
+        }
+        approximateAbove = Long.parseLong(options.getOrDefault("approximate-above", "0"));
+        if (options.containsKey("sampler")) {
+            samplingMethod = ApproximateInference.Method.fromLabel(options.get("sampler"));
+        }
+        samples = Long.parseLong(options.getOrDefault("samples", String.valueOf(samples)));
+        timeBudget = Long.parseLong(options.getOrDefault("time-budget", "0"));
+        intervalWidth = Double.parseDouble(options.getOrDefault("ci-width", "0"));
+        incremental = options.containsKey("incremental");
+        if (options.containsKey("kernels")) {
+            Factor.kernels = FactorKernels.fromLabel(options.get("kernels"));
+        }
+        if (options.containsKey("sparse")) {
+            String density = options.get("sparse");
+            Factor.sparseDensity = density.equals("true") ? 0.25 : Double.parseDouble(density);
+        }
+        // Every worker may build its largest factor at the same time
+        long defaultMaxFactor = Runtime.getRuntime().maxMemory() / 4 / Double.BYTES / parallelism;
+        maxFactorSize = Long.parseLong(options.getOrDefault("max-factor", String.valueOf(defaultMaxFactor)));
+        maxMultiplications = Long.parseLong(options.getOrDefault("max-multiplications", "0"));
+        reportPlan = options.containsKey("report-plan");
+        planQueries = options.containsKey("max-factor") || options.containsKey("max-multiplications") || reportPlan || approximateAbove > 0;
+        long factorMemoMegabytes = Long.parseLong(options.getOrDefault("factor-memo", "0"));
+        if (factorMemoMegabytes > 0) {
+            if (incremental) {
+                throw new IllegalArgumentException("--factor-memo and --incremental cannot be combined");
+            }
+            factorMemo = new FactorMemo(factorMemoMegabytes << 20);
+        }
+        long networkCacheMegabytes = Long.parseLong(options.getOrDefault("network-cache", "256"));
+        if (networkCacheMegabytes > 0) {
+            networkRegistry = new NetworkRegistry(networkCacheMegabytes << 20, Ex1::readNetwork);
+        }
+        if (options.containsKey("server")) {
+            String server = options.get("server");
+            if (server.equals("stdio")) {
+                new QueryServer().serveStdio();
+            } else {
+                new QueryServer().serveSocket(Integer.parseInt(server));
+            }
+        } else {
+            try (OutputWriter output = OutputWriter.append(Paths.get("output.txt"))) {
+                if (parallelism > 1) {
+                    readInputFileParallel(strFromUser, output, parallelism);
+                } else {
+                    readInputFile(strFromUser, output);
+                }
+            }
+        }
+        if (queryCache != null) {
+            System.err.println("Query cache: " + queryCache.getHits() + " hits, " + queryCache.getMisses() + " misses");
+        }
+        if (factorMemo != null) {
+            System.err.println("Factor memo: " + factorMemo.getHits() + " hits, " + factorMemo.getMisses() + " misses");
+        }
+        if (querySummary != null) {
+            querySummary.dump(System.err);
+        }
+    }
+    // Parses command line options of the form --name=value
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+            int equals = arg.indexOf('=');
+            if (equals > -1) {
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            } else {
+                options.put(arg.substring(2), "true");
+            }
+        }
+        return options;
+    }
+    // Returns the engine named after the .xml path of a network line, or null if the line does not load a network
+    static Engine networkEngine(String line) {
+        if (line.endsWith(".xml")) {
+            return defaultEngine;
+        }
+        int space = line.lastIndexOf(' ');
+        if (space > -1 && line.substring(0, space).endsWith(".xml")) {
+            return Engine.fromLabel(line.substring(space + 1));
+        }
+        return null;
+    }
+    // Loads the network of a network line
+    static BayesianNetwork loadNetwork(String line) {
+        String path = networkPath(line);
+        return networkRegistry != null ? networkRegistry.get(path) : readNetwork(path);
+    }
+    // Reads a network from its file
+    private static BayesianNetwork readNetwork(String path) {
+        return useSnapshots ? NetworkSnapshot.load(path, streamingLoader) : new BayesianNetwork(path, streamingLoader);
+    }
+    // Returns the path of the network loaded by a network line
+    static String networkPath(String line) {
+        return line.endsWith(".xml") ? line : line.substring(0, line.lastIndexOf(' '));
     }
     // Reads input file and processes queries
-    private static void readInputFile(String inputFilePath, BufferedWriter output) {
+    private static void readInputFile(String inputFilePath, OutputWriter output) {
         BayesianNetwork network = null;
+        Engine engine = defaultEngine;
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFilePath))) {
+        try (QueryReader reader = new QueryReader(Paths.get(inputFilePath))) {
             String line;
 
             while ((line = reader.readLine()) != null) {
-                if (line.endsWith(".xml")) {
-                    network = new BayesianNetwork(line); // Initialize the BayesianNetwork with the parsed nodes
+                if (networkEngine(line) != null) {
+                    engine = networkEngine(line);
+                    network = loadNetwork(line); // Initialize the BayesianNetwork with the parsed nodes
                 } else {
                     if (network != null) {
-                        processQuery(line, network, output); // Pass the BufferedWriter to processQuery
+                        Answer answer = answerOrReject(line, network, engine);
+                        if (answer != null) {
+                            output.write(answer);
+                        }
                     } else {
                         System.err.println("No Bayesian Network loaded. Skipping query.");
                     }
@@ -32,89 +240,191 @@ public class Ex1 {
             e.printStackTrace();
         }
     }
-    // Processes each query
-    private static void processQuery(String line, BayesianNetwork network, BufferedWriter output) {
-        try {
-            if (line.startsWith("P(")) {
-                // Parsing and handling probability query
-                String[] elimination_query = line.split(" ");
-                elimination_query[0] = elimination_query[0].substring(2, elimination_query[0].length() - 1);
-                List<String> hidden_vars;
-                if(elimination_query.length > 1){
-                    hidden_vars = new ArrayList<>(Arrays.asList(elimination_query[1].split("-")));
-                }
-                else{
-                    hidden_vars = new ArrayList<>();
-                }
-
-
-                String[] query = elimination_query[0].split("\\|");
-                String[] query_var_value = query[0].split("=");
-                String[] evidence_query;
-                Map<String, String> evidence = new HashMap<>();
-                if (query.length > 1) {
-                    evidence_query = query[1].split(",");
-                    for (String evi_var : evidence_query) {
-                        String[] evidence_var_value = evi_var.split("=");
-                        evidence.put(evidence_var_value[0], evidence_var_value[1]);
-                    }
-                }
-
-                // Calling variable_elimination function
-                String resultStr = VariableElimination.variable_elimination(network, query_var_value[0], query_var_value[1], evidence, hidden_vars);
-                String[] resultParts = resultStr.split(",");
-                double result = Double.parseDouble(resultParts[0]);
-                int addOpers = Integer.parseInt(resultParts[1]);
-                int mulOpers = Integer.parseInt(resultParts[2]);
-
-                // Writing the result to the output file
-                String formated_output = String.format("%.5f,%d,%d\n",result,addOpers,mulOpers);
-                output.write(formated_output);
-
-            } else {
-                // Assuming 'query' is in the format "query1, query2 | evidence"
-                String[] parts = line.split("\\|");
-                String[] queryNodes = parts[0].trim().split("-");
-                String evidenceString = null;
-
-                if (parts.length > 1) {
-                    evidenceString = parts[1].trim();
-                }
-
-                if (queryNodes.length != 2) {
-                    System.err.println("Query format incorrect. Expected format: nodeA-nodeB | evidence");
-                    return;
-                }
-
-                String nodeA = queryNodes[0].trim();
-                String nodeB = queryNodes[1].trim();
+    // Reads input file and answers the queries on a pool of worker threads, writing the answers in input order
+    // At most QUERIES_PER_THREAD queries per worker are in flight: a slow query at the head makes the reader wait for it
+    // instead of holding the answers of the rest of the file
+    private static void readInputFileParallel(String inputFilePath, OutputWriter output, int parallelism) {
+        BayesianNetwork network = null;
+        Engine engine = defaultEngine;
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        Deque<Future<Answer>> pending = new ArrayDeque<>();
 
-                // Parse evidence string into a map
-                Map<String, String> evidence = parseEvidence(evidenceString);
+        try (QueryReader reader = new QueryReader(Paths.get(inputFilePath))) {
+            String line;
 
-                // Check independence
-                BayesBall bayesBall = new BayesBall(network);
-                if (bayesBall.areIndependent(nodeA, nodeB, evidence)) {
-                    output.write("yes\n");
+            while ((line = reader.readLine()) != null) {
+                if (networkEngine(line) != null) {
+                    engine = networkEngine(line);
+                    network = loadNetwork(line); // Queries already submitted keep the network they were read with
                 } else {
-                    output.write("no\n");
+                    if (network != null) {
+                        String query = line;
+                        BayesianNetwork current = network;
+                        Engine currentEngine = engine;
+                        while (pending.size() >= QUERIES_PER_THREAD * parallelism) {
+                            writeAnswer(pending.poll(), output);
+                        }
+                        pending.add(pool.submit(() -> answerOrReject(query, current, currentEngine)));
+                        // Write the answers that are already done, without waiting for later ones
+                        while (!pending.isEmpty() && pending.peek().isDone()) {
+                            writeAnswer(pending.poll(), output);
+                        }
+                    } else {
+                        System.err.println("No Bayesian Network loaded. Skipping query.");
+                    }
                 }
             }
+            while (!pending.isEmpty()) {
+                writeAnswer(pending.poll(), output);
+            }
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            pool.shutdownNow();
         }
     }
-    // Parses the evidence string into a map
-    private static Map<String, String> parseEvidence(String evidenceString) {
-        Map<String, String> evidence = new HashMap<>();
-        if (evidenceString != null) {
-            String[] parts = evidenceString.split(",");
-            for (String part : parts) {
-                String[] keyValue = part.split("=");
-                evidence.put(keyValue[0].trim(), keyValue[1].trim());
+    // Waits for an answer and writes it to the output
+    private static void writeAnswer(Future<Answer> answer, OutputWriter output) throws IOException {
+        try {
+            Answer result = answer.get();
+            if (result != null) {
+                output.write(result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a query");
+        } catch (ExecutionException e) {
+            // Fail the same way the sequential mode would
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
             }
+            throw new IOException(e.getCause());
+        }
+    }
+    // Answers a query of the input file, reporting a query that is over budget on stderr instead of failing the run
+    private static Answer answerOrReject(String line, BayesianNetwork network, Engine engine) {
+        try {
+            Query query = Query.parse(line);
+            return query != null ? answer(query, network, engine) : null;
+        } catch (EliminationPlanner.OverBudgetException e) {
+            System.err.println(line + ": rejected, " + e.getMessage());
+            return null;
+        }
+    }
+    // Answers a query and returns the line to write, or null if the query is malformed
+    static String answerQuery(String line, BayesianNetwork network, Engine engine) {
+        Query query = Query.parse(line);
+        return query != null ? answer(query, network, engine).format() : null;
+    }
+    // Answers a parsed query
+    static Answer answer(Query query, BayesianNetwork network, Engine engine) {
+        if (querySummary == null) {
+            return answer(query, network, engine, null);
+        }
+        QueryStats stats = new QueryStats(query.line);
+        long start = System.nanoTime();
+        Answer answer = answer(query, network, engine, stats);
+        stats.totalNanos = System.nanoTime() - start;
+        querySummary.add(stats);
+        if (printQueryStats) {
+            System.err.println(stats.toRecord(network.getCompiled()));
+        }
+        return answer;
+    }
+    // Answers a query, recording its phases in stats unless stats is null
+    private static Answer answer(Query query, BayesianNetwork network, Engine engine, QueryStats stats) {
+        if (query.kind == Query.Kind.INDEPENDENCE) {
+            String nodeA = query.queryVars.get(0);
+            String nodeB = query.queryVars.get(1);
+            BayesBall bayesBall = new BayesBall(network);
+            if (queryCache != null) {
+                return Answer.independence(queryCache.independence(network.getCompiled(), nodeA, nodeB, query.evidence,
+                        () -> bayesBall.areIndependent(nodeA, nodeB, query.evidence, stats)));
+            }
+            return Answer.independence(bayesBall.areIndependent(nodeA, nodeB, query.evidence, stats));
         }
 
-        return evidence;
+        CompiledNetwork compiled = network.getCompiled();
+        String method = engine.label + (engine == Engine.VE && orderHeuristic != null ? " " + orderHeuristic.getLabel() : "");
+        // "P(X|E)" asks for the whole posterior of X, "P(X,Y|E)" for the posterior of each of X and Y
+        String queryVar = String.join(",", query.queryVars);
+        String queryValue = query.kind == Query.Kind.PROBABILITY ? query.queryValue : "*";
+        Marginals marginals;
+        if (queryCache != null) {
+            marginals = queryCache.probability(compiled, queryVar, queryValue, query.evidence, query.hiddenVars, method,
+                    () -> marginals(network, engine, query, stats));
+        } else {
+            marginals = marginals(network, engine, query, stats);
+        }
+        if (query.kind == Query.Kind.PROBABILITY) {
+            return Answer.probability(compiled, marginals, compiled.outcomeId(marginals.vars[0], query.queryValue));
+        }
+        return Answer.posterior(compiled, marginals);
+    }
+    // Computes the posteriors of the query variables with the chosen engine
+    private static Marginals marginals(BayesianNetwork network, Engine engine, Query query, QueryStats stats) {
+        CompiledNetwork compiled = network.getCompiled();
+        int[] vars = compiled.ids(query.queryVars);
+        int[] evidenceIds = compiled.evidence(query.evidence);
+        if (engine == Engine.JT) {
+            return network.getJunctionTree().marginals(vars, evidenceIds);
+        }
+        if (engine == Engine.LW) {
+            return sample(compiled, ApproximateInference.Method.LIKELIHOOD_WEIGHTING, vars, evidenceIds);
+        }
+        if (engine == Engine.GIBBS) {
+            return sample(compiled, ApproximateInference.Method.GIBBS, vars, evidenceIds);
+        }
+        int[] order = compiled.ids(query.hiddenVars);
+        // Pruning does not depend on the elimination order, so the planner and the elimination share one pass
+        long start = stats != null ? System.nanoTime() : 0;
+        BitSet pruned = VariableElimination.prune(compiled, vars, evidenceIds, order, stats);
+        if (stats != null) {
+            stats.pruneNanos = System.nanoTime() - start;
+        }
+        if (reportOrder) {
+            reportOrder(query.line, compiled, vars, evidenceIds, order, pruned);
+        }
+        EliminationOrdering.Heuristic heuristic = orderHeuristic;
+        if (planQueries) {
+            EliminationPlanner planner = new EliminationPlanner(compiled, maxFactorSize, maxMultiplications);
+            EliminationPlanner.Plan plan = planner.choose(vars, evidenceIds, order, pruned, orderHeuristic);
+            if (reportPlan) {
+                System.err.println(plan.describe(compiled));
+            }
+            // A query whose exact elimination would build too large a factor is sampled instead
+            if (approximateAbove > 0 && plan.peakFactorSize > approximateAbove) {
+                return sample(compiled, samplingMethod, vars, evidenceIds);
+            }
+            heuristic = planner.require(plan).heuristic;
+        }
+        if (incremental) {
+            return session(network).marginals(vars, evidenceIds, order, pruned, heuristic, stats);
+        }
+        EliminationMemo memo = factorMemo != null ? factorMemo.forQuery() : EliminationMemo.DIRECT;
+        return VariableElimination.marginals(compiled, vars, evidenceIds, order, pruned, heuristic, stats, memo);
+    }
+    // Estimates the posteriors by sampling
+    private static Marginals sample(CompiledNetwork network, ApproximateInference.Method method, int[] vars, int[] evidence) {
+        return new ApproximateInference(network, method, samples, timeBudget, intervalWidth).marginals(vars, evidence);
+    }
+    // Returns this thread's incremental session, starting a new one when the network changed
+    private static InferenceSession session(BayesianNetwork network) {
+        InferenceSession session = sessions.get();
+        if (session == null || session.getNetwork() != network) {
+            session = new InferenceSession(network);
+            sessions.set(session);
+        }
+        return session;
+    }
+    // Prints the largest factor the elimination builds with the given order and with a heuristic order, as planned
+    private static void reportOrder(String line, CompiledNetwork network, int[] queryVars, int[] evidence, int[] hiddenVars, BitSet pruned) {
+        EliminationOrdering.Heuristic heuristic = orderHeuristic != null ? orderHeuristic : EliminationOrdering.Heuristic.MIN_FILL;
+        EliminationPlanner planner = new EliminationPlanner(network, maxFactorSize, maxMultiplications);
+        System.err.println(line + ": given order " + planner.plan(queryVars, evidence, hiddenVars, pruned, null).peakFactorSize + ", "
+                + heuristic.getLabel() + " order " + planner.plan(queryVars, evidence, hiddenVars, pruned, heuristic).peakFactorSize);
     }
-}
\ No newline at end of file
+}
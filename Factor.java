@@ -1,127 +1,500 @@
-
+import java.nio.DoubleBuffer;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 // Class to represent a factor for variable elimination
+// The table is stored densely in a double[], with the last variable changing fastest (the same order as the XML TABLE),
+// or, in sparse mode, as the increasing list of its non-zero cells and their values
 class Factor implements Comparable<Factor>{
-    List<String> variables;
-    Map<List<String>, Double> values;
+    private static final int PARALLEL_GRAIN = 1 << 13;  // Output cells each fork/join task computes at least
+    static int parallelThreshold = 1 << 16;  // Results with at least this many cells are computed on the common pool, 0 never
+    static FactorKernels kernels = FactorKernels.select();  // Loops that compute the cells of dense results
+    static double sparseDensity;  // Elimination factors with at most this fraction of non-zero cells are stored sparsely, 0 never
+
+    CompiledNetwork network;
+    int[] variables;      // Variable ids
+    int[] offsets;        // Outcome id at local index 0 (an evidence variable keeps only its observed outcome)
+    int[] cardinalities;
+    int[] strides;
+    double[] values;      // Every cell, or the values of the non-zero cells when the factor is sparse
+    int[] cells;          // Non-zero cells in increasing order, null when the factor is dense
 
-    // Constructor for a factor given variables and values
-    public Factor(List<String> variables, Map<List<String>, Double> values) {
+    // Constructor for a factor given variables, their domains and values (a null values array is allocated with zeros)
+    public Factor(CompiledNetwork network, int[] variables, int[] offsets, int[] cardinalities, double[] values) {
+        this.network = network;
         this.variables = variables;
-        this.values = values;
+        this.offsets = offsets;
+        this.cardinalities = cardinalities;
+        computeStrides();
+        this.values = values != null ? values : new double[size()];
     }
     // Constructor for a factor from a node and evidence
-    public Factor(NodeBase node, Map<String, String> evidence) {
-        this.variables = new ArrayList<>(node.parents.stream().map(p -> p.name).collect(Collectors.toList()));
-        this.variables.add(node.name);
-        this.values = new HashMap<>();
-
-        for (Map.Entry<List<String>, Double> entry : node.cpt.entrySet()) {
-            List<String> assignment = new ArrayList<>(entry.getKey());
-            boolean consistent = true;
-            for (NodeBase parent : node.parents) { // Check evidence against node's parents
-                String parentValue = evidence.get(parent.name);
-                if (parentValue != null && !assignment.get(variables.indexOf(parent.name)).equals(parentValue)) {
-                    consistent = false;
+    public Factor(CompiledNetwork network, int node, int[] evidence) {
+        this.network = network;
+        int[] parents = network.parents[node];
+        int n = parents.length + 1;
+        this.variables = Arrays.copyOf(parents, n);
+        this.variables[n - 1] = node;
+        this.offsets = new int[n];
+        this.cardinalities = new int[n];
+        for (int i = 0; i < n; i++) {
+            int observed = evidence[variables[i]];
+            if (observed != CompiledNetwork.NO_EVIDENCE) {
+                offsets[i] = observed;
+                cardinalities[i] = 1;
+            } else {
+                cardinalities[i] = network.cardinalities[variables[i]];
+            }
+        }
+        computeStrides();
+        this.values = new double[size()];
+
+        // Read the sub-block of the CPT consistent with the evidence: an observed variable fixes its digit of the table
+        // index, and the unobserved ones are walked with their table strides, so only the kept rows are touched
+        DoubleBuffer table = network.cpts[node];
+        int[] tableStrides = new int[n];
+        int start = 0;
+        int stride = 1;
+        for (int j = n - 1; j >= 0; j--) {
+            tableStrides[j] = stride;
+            start += offsets[j] * stride;
+            stride *= network.cardinalities[variables[j]];
+        }
+        int[] assignment = new int[n];
+        int index = start;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = table.get(index);
+            for (int j = n - 1; j >= 0; j--) {
+                if (++assignment[j] < cardinalities[j]) {
+                    index += tableStrides[j];
                     break;
                 }
+                index -= tableStrides[j] * (assignment[j] - 1);
+                assignment[j] = 0;
             }
-            // Add consistent assignments to the factor's values
-            if (consistent) {
-                if(evidence.get(node.name) != null){
-                    if(assignment.get(variables.indexOf(node.name)).equals(evidence.get(node.name))) {
-                        this.values.put(assignment, entry.getValue());
-                    }
+        }
+    }
+    // Computes the stride of every variable
+    private void computeStrides() {
+        this.strides = new int[variables.length];
+        int stride = 1;
+        for (int i = variables.length - 1; i >= 0; i--) {
+            strides[i] = stride;
+            stride *= cardinalities[i];
+        }
+    }
+
+    // Stores the factor sparsely if few enough of its cells are non-zero, densely otherwise, and returns it
+    // Only the representation changes, never a value
+    Factor compact() {
+        if (sparseDensity <= 0) {
+            return this;
+        }
+        int nonZero = 0;
+        if (cells != null) {
+            nonZero = cells.length;
+        } else {
+            for (double value : values) {
+                if (value != 0.0) {
+                    nonZero++;
                 }
-                else{
-                    this.values.put(assignment, entry.getValue());
+            }
+        }
+        boolean sparse = nonZero <= sparseDensity * size();
+        if (sparse && cells == null) {
+            int[] nonZeroCells = new int[nonZero];
+            double[] nonZeroValues = new double[nonZero];
+            for (int cell = 0, i = 0; cell < values.length; cell++) {
+                if (values[cell] != 0.0) {
+                    nonZeroCells[i] = cell;
+                    nonZeroValues[i++] = values[cell];
                 }
             }
+            cells = nonZeroCells;
+            values = nonZeroValues;
+        } else if (!sparse && cells != null) {
+            double[] dense = new double[size()];
+            for (int i = 0; i < cells.length; i++) {
+                dense[cells[i]] = values[i];
+            }
+            values = dense;
+            cells = null;
+        }
+        return this;
+    }
+    // Returns a copy whose values can be changed without changing this factor
+    Factor copy() {
+        Factor copy = new Factor(network, variables, offsets, cardinalities, values.clone());
+        copy.cells = cells;
+        return copy;
+    }
+    // Returns the value of a cell
+    double value(int cell) {
+        if (cells == null) {
+            return values[cell];
+        }
+        int i = Arrays.binarySearch(cells, cell);
+        return i >= 0 ? values[i] : 0.0;
+    }
+    // Number of values stored
+    int stored() {
+        return values.length;
+    }
 
+    public int size() {
+        int size = 1;
+        for (int card : cardinalities) {
+            size *= card;
         }
+        return size;
     }
 
-    public boolean contains(String var) {
-        return variables.contains(var);
+    public boolean contains(int var) {
+        return indexOf(var) > -1;
+    }
+    // Returns the position of a variable in this factor, or -1
+    public int indexOf(int var) {
+        return indexOf(variables, variables.length, var);
     }
 
 
     public static Factor multiply(Factor f1, Factor f2, AtomicInteger mulOpers) {
         // Combine variables from both factors
-        List<String> newVariables = new ArrayList<>(f1.variables);
-        for (String var : f2.variables) {
-            if (!newVariables.contains(var)) {
-                newVariables.add(var);
+        int n = f1.variables.length;
+        int[] newVariables = Arrays.copyOf(f1.variables, f1.variables.length + f2.variables.length);
+        int[] newOffsets = Arrays.copyOf(f1.offsets, newVariables.length);
+        int[] newCardinalities = Arrays.copyOf(f1.cardinalities, newVariables.length);
+        int[] positions = new int[f2.variables.length];  // Position of each variable of f2 in the result
+        for (int i = 0; i < f2.variables.length; i++) {
+            int index = f1.indexOf(f2.variables[i]);
+            if (index == -1) {
+                newVariables[n] = f2.variables[i];
+                newOffsets[n] = f2.offsets[i];
+                newCardinalities[n] = f2.cardinalities[i];
+                index = n++;
+            } else if (newOffsets[index] != f2.offsets[i] || newCardinalities[index] != f2.cardinalities[i]) {
+                throw new IllegalArgumentException("Factors disagree on the outcomes of " + f1.network.names[f2.variables[i]]);
             }
+            positions[i] = index;
+        }
+        if (f1.cells != null || f2.cells != null) {
+            return multiplySparse(f1, f2, Arrays.copyOf(newVariables, n), Arrays.copyOf(newOffsets, n), Arrays.copyOf(newCardinalities, n), positions, mulOpers);
         }
+        Factor result = new Factor(f1.network, Arrays.copyOf(newVariables, n), Arrays.copyOf(newOffsets, n), Arrays.copyOf(newCardinalities, n), null);
 
-        Map<List<String>, Double> newValues = new HashMap<>();
-        for (Map.Entry<List<String>, Double> entry1 : f1.values.entrySet()) {
-            for (Map.Entry<List<String>, Double> entry2 : f2.values.entrySet()) {
-                List<String> newAssignment = new ArrayList<>(Collections.nCopies(newVariables.size(), ""));
-                boolean match = true;
-                // Merge assignments from both factors
-                for (String var : f1.variables) {
-                    newAssignment.set(newVariables.indexOf(var), entry1.getKey().get(f1.variables.indexOf(var)));
-                }
-                for (String var : f2.variables) {
-                    String value = entry2.getKey().get(f2.variables.indexOf(var));
-                    if (newAssignment.get(newVariables.indexOf(var)).equals("")) {
-                        newAssignment.set(newVariables.indexOf(var), value);
-                    } else if (!newAssignment.get(newVariables.indexOf(var)).equals(value)) {
-                        match = false;
-                        break;
-                    }
-                }
+        // Strides of each input factor along the variables of the result (0 if the factor does not mention the variable)
+        int[] strides1 = new int[n];
+        int[] strides2 = new int[n];
+        System.arraycopy(f1.strides, 0, strides1, 0, f1.strides.length);
+        for (int i = 0; i < positions.length; i++) {
+            strides2[positions[i]] = f2.strides[i];
+        }
+
+        forEachRange(result.values.length, (from, to) -> {
+            kernels.multiplyRange(f1.values, f2.values, result.values, result.cardinalities, strides1, strides2, from, to);
+            return 0;
+        });
+        mulOpers.addAndGet(result.values.length);
 
-                if (match) {
-                    // If assignments are consistent, multiply the values
-                    double newValue = entry1.getValue() * entry2.getValue();
-                    mulOpers.incrementAndGet();
-                    newValues.put(newAssignment, newValue);
+        return result;
+    }
+    // Multiplies each non-zero cell of the first factor with the matching cells of the second, skipping every pair with
+    // a zero; only the multiplications performed are counted. The result variables are those of f1 followed by the new
+    // ones of f2, so the cells come out in increasing order.
+    private static Factor multiplySparse(Factor f1, Factor f2, int[] variables, int[] offsets, int[] cardinalities, int[] positions, AtomicInteger mulOpers) {
+        int n1 = f1.variables.length;
+        // Index into f2 of every assignment of the variables only f2 has, and the stride of the shared ones
+        int extension = 1;
+        for (int i = n1; i < variables.length; i++) {
+            extension *= cardinalities[i];
+        }
+        int[] sharedStrides = new int[n1];
+        int[] extensionIndex = new int[extension];
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i] < n1) {
+                sharedStrides[positions[i]] = f2.strides[i];
+            }
+        }
+        for (int e = 0; e < extension; e++) {
+            int rest = e;
+            for (int i = positions.length - 1; i >= 0; i--) {
+                if (positions[i] >= n1) {
+                    int card = cardinalities[positions[i]];
+                    extensionIndex[e] += (rest % card) * f2.strides[i];
+                    rest /= card;
                 }
             }
         }
 
-        return new Factor(newVariables, newValues);
+        int nonZero1 = f1.cells != null ? f1.cells.length : f1.values.length;
+        int[] cells = new int[Math.max(16, nonZero1)];
+        double[] values = new double[cells.length];
+        int size = 0;
+        int muls = 0;
+        for (int i = 0; i < nonZero1; i++) {
+            double value1 = f1.values[i];
+            if (value1 == 0.0) {
+                continue;
+            }
+            int cell1 = f1.cells != null ? f1.cells[i] : i;
+            int base2 = 0;
+            for (int j = 0, rest = cell1; j < n1; j++) {
+                base2 += (rest / f1.strides[j]) * sharedStrides[j];
+                rest %= f1.strides[j];
+            }
+            for (int e = 0; e < extension; e++) {
+                double value2 = f2.value(base2 + extensionIndex[e]);
+                if (value2 == 0.0) {
+                    continue;
+                }
+                double product = value1 * value2;
+                muls++;
+                if (product != 0.0) {
+                    if (size == cells.length) {
+                        cells = Arrays.copyOf(cells, size * 2);
+                        values = Arrays.copyOf(values, size * 2);
+                    }
+                    cells[size] = cell1 * extension + e;
+                    values[size++] = product;
+                }
+            }
+        }
+        mulOpers.addAndGet(muls);
+        Factor result = new Factor(f1.network, variables, offsets, cardinalities, Arrays.copyOf(values, size));
+        result.cells = Arrays.copyOf(cells, size);
+        return result.compact();
     }
 
 
-    public static Factor sumOut(Factor factor, String var, AtomicInteger addOpers) {
+    public static Factor sumOut(Factor factor, int var, AtomicInteger addOpers) {
+        if (factor.cells != null) {
+            return sumOutSparse(factor, var, addOpers);
+        }
         // Create new variables list without the specified variable
-        List<String> newVariables = new ArrayList<>(factor.variables);
-        newVariables.remove(var);
+        int removed = factor.indexOf(var);
+        int n = factor.variables.length - 1;
+        int[] newVariables = new int[n];
+        int[] newOffsets = new int[n];
+        int[] newCardinalities = new int[n];
+        int[] inStrides = new int[n];  // Strides of the input factor along the variables of the result
+        for (int i = 0, j = 0; i < factor.variables.length; i++) {
+            if (i != removed) {
+                newVariables[j] = factor.variables[i];
+                newOffsets[j] = factor.offsets[i];
+                newCardinalities[j] = factor.cardinalities[i];
+                inStrides[j++] = factor.strides[i];
+            }
+        }
+        Factor result = new Factor(factor.network, newVariables, newOffsets, newCardinalities, null);
+        int varStride = factor.strides[removed];
+        int varCard = factor.cardinalities[removed];
+
+        int adds = forEachRange(result.values.length,
+                (from, to) -> kernels.sumOutRange(factor.values, result.values, result.cardinalities, inStrides, varStride, varCard, from, to));
+        addOpers.addAndGet(adds);
 
-        Map<List<String>, Double> newValues = new HashMap<>();
-        for (Map.Entry<List<String>, Double> entry : factor.values.entrySet()) {
-            List<String> newAssignment = new ArrayList<>(entry.getKey());
-            newAssignment.remove(factor.variables.indexOf(var));
-            // Sum the values for assignments where the variable is summed out
-            double newValue = entry.getValue();
-            double newEntry = newValues.getOrDefault(newAssignment, 0.0);
-            if(newEntry != 0.0)
-            {
-                newValue = newValues.getOrDefault(newAssignment, 0.0) + entry.getValue();
-                addOpers.incrementAndGet();
+        return result;
+    }
+    // Sums a variable out of a sparse factor, adding only the non-zero values that share a result cell
+    private static Factor sumOutSparse(Factor factor, int var, AtomicInteger addOpers) {
+        int removed = factor.indexOf(var);
+        int n = factor.variables.length - 1;
+        int[] newVariables = new int[n];
+        int[] newOffsets = new int[n];
+        int[] newCardinalities = new int[n];
+        for (int i = 0, j = 0; i < factor.variables.length; i++) {
+            if (i != removed) {
+                newVariables[j] = factor.variables[i];
+                newOffsets[j] = factor.offsets[i];
+                newCardinalities[j++] = factor.cardinalities[i];
             }
-            newValues.put(newAssignment, newValue);
         }
+        // The result cell drops the digit of the variable; sorting by result cell, then by position, keeps the
+        // outcomes of the variable in the order the dense sum adds them
+        int varStride = factor.strides[removed];
+        int block = varStride * factor.cardinalities[removed];
+        long[] keys = new long[factor.cells.length];
+        for (int i = 0; i < keys.length; i++) {
+            int cell = factor.cells[i];
+            long target = (long) (cell / block) * varStride + cell % varStride;
+            keys[i] = target << 32 | i;
+        }
+        Arrays.sort(keys);
 
-        return new Factor(newVariables, newValues);
+        int[] cells = new int[keys.length];
+        double[] values = new double[keys.length];
+        int size = 0;
+        int adds = 0;
+        for (int i = 0; i < keys.length; ) {
+            int target = (int) (keys[i] >>> 32);
+            double sum = 0.0;
+            for (; i < keys.length && (int) (keys[i] >>> 32) == target; i++) {
+                double value = factor.values[(int) keys[i]];
+                if (sum != 0.0) {
+                    sum += value;
+                    adds++;
+                } else {
+                    sum = value;
+                }
+            }
+            if (sum != 0.0) {
+                cells[size] = target;
+                values[size++] = sum;
+            }
+        }
+        addOpers.addAndGet(adds);
+        Factor result = new Factor(factor.network, newVariables, newOffsets, newCardinalities, Arrays.copyOf(values, size));
+        result.cells = Arrays.copyOf(cells, size);
+        return result.compact();
     }
+    // Multiplies the factors and sums out a variable in one pass, writing straight into the smaller result
+    // The product over all the factors is never stored, but the counts are those of multiplying them one after the other
+    // In sparse mode the result is stored by density, and sparse inputs are multiplied pairwise, then summed, skipping zeros
+    public static Factor multiplyAndSumOut(List<Factor> factors, int var, AtomicInteger mulOpers, AtomicInteger addOpers) {
+        Factor first = factors.get(0);
+        int m = factors.size();
+        for (Factor factor : factors) {
+            if (factor.cells != null) {
+                Factor product = first;
+                for (int f = 1; f < m; f++) {
+                    product = multiply(product, factors.get(f), mulOpers).compact();
+                }
+                return sumOut(product, var, addOpers).compact();
+            }
+        }
+
+        // Combine the variables in the order pairwise multiplication would, counting the cells of each partial product
+        int[] joinVariables = first.variables.clone();
+        int[] joinOffsets = first.offsets.clone();
+        int[] joinCardinalities = first.cardinalities.clone();
+        int n = joinVariables.length;
+        long muls = 0;
+        for (int f = 1; f < m; f++) {
+            Factor factor = factors.get(f);
+            joinVariables = Arrays.copyOf(joinVariables, n + factor.variables.length);
+            joinOffsets = Arrays.copyOf(joinOffsets, joinVariables.length);
+            joinCardinalities = Arrays.copyOf(joinCardinalities, joinVariables.length);
+            for (int i = 0; i < factor.variables.length; i++) {
+                int index = indexOf(joinVariables, n, factor.variables[i]);
+                if (index == -1) {
+                    joinVariables[n] = factor.variables[i];
+                    joinOffsets[n] = factor.offsets[i];
+                    joinCardinalities[n++] = factor.cardinalities[i];
+                } else if (joinOffsets[index] != factor.offsets[i] || joinCardinalities[index] != factor.cardinalities[i]) {
+                    throw new IllegalArgumentException("Factors disagree on the outcomes of " + first.network.names[factor.variables[i]]);
+                }
+            }
+            long cells = 1;
+            for (int i = 0; i < n; i++) {
+                cells *= joinCardinalities[i];
+            }
+            muls += cells;
+        }
 
-    public double getValue(String queryVar, String queryValue) {
-        int index = variables.indexOf(queryVar);
-        for (Map.Entry<List<String>, Double> entry : values.entrySet()) {
-            if(index > -1){
-                if (entry.getKey().get(index).equals(queryValue)) {
-                    return entry.getValue();
+        // The result keeps every joined variable except the summed out one
+        int removed = indexOf(joinVariables, n, var);
+        int[] newVariables = new int[n - 1];
+        int[] newOffsets = new int[n - 1];
+        int[] newCardinalities = new int[n - 1];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (i != removed) {
+                newVariables[j] = joinVariables[i];
+                newOffsets[j] = joinOffsets[i];
+                newCardinalities[j++] = joinCardinalities[i];
+            }
+        }
+        Factor result = new Factor(first.network, newVariables, newOffsets, newCardinalities, null);
+        int varCard = joinCardinalities[removed];
+
+        // Strides of each input factor along the result variables and along the summed out variable
+        int[][] inStrides = new int[m][newVariables.length];
+        int[] varStrides = new int[m];
+        double[][] inValues = new double[m][];
+        for (int f = 0; f < m; f++) {
+            Factor factor = factors.get(f);
+            inValues[f] = factor.values;
+            for (int i = 0; i < factor.variables.length; i++) {
+                if (factor.variables[i] == var) {
+                    varStrides[f] = factor.strides[i];
+                } else {
+                    inStrides[f][indexOf(newVariables, newVariables.length, factor.variables[i])] = factor.strides[i];
                 }
             }
+        }
 
+        int adds = forEachRange(result.values.length,
+                (from, to) -> kernels.multiplyAndSumOutRange(inValues, result.values, result.cardinalities, inStrides, varStrides, varCard, from, to));
+        mulOpers.addAndGet((int) muls);
+        addOpers.addAndGet(adds);
+
+        return result.compact();
+    }
+    // Computes the cells of a result in ranges, splitting large results across the common fork/join pool
+    // Each range returns its own count and the counts are summed as the tasks join, so no counter is shared between threads
+    private static int forEachRange(int size, RangeKernel kernel) {
+        if (parallelThreshold <= 0 || size < parallelThreshold || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            return kernel.compute(0, size);
+        }
+        return ForkJoinPool.commonPool().invoke(new RangeTask(kernel, 0, size));
+    }
+    // Returns the assignment (one outcome index per variable) of a cell of a table
+    static int[] assignment(int cell, int[] cardinalities) {
+        int[] assignment = new int[cardinalities.length];
+        for (int j = cardinalities.length - 1; j >= 0 && cell > 0; j--) {
+            assignment[j] = cell % cardinalities[j];
+            cell /= cardinalities[j];
+        }
+        return assignment;
+    }
+
+    // Computes the cells from (inclusive) to (exclusive) of a result and returns the operations it counted
+    private interface RangeKernel {
+        int compute(int from, int to);
+    }
+
+    private static final class RangeTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+        private final RangeKernel kernel;
+        private final int from;
+        private final int to;
+
+        RangeTask(RangeKernel kernel, int from, int to) {
+            this.kernel = kernel;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from <= PARALLEL_GRAIN) {
+                return kernel.compute(from, to);
+            }
+            int middle = (from + to) >>> 1;
+            RangeTask left = new RangeTask(kernel, from, middle);
+            left.fork();
+            int right = new RangeTask(kernel, middle, to).compute();
+            return left.join() + right;
+        }
+    }
+    // Returns the position of a variable among the first n entries of an array, or -1
+    private static int indexOf(int[] variables, int n, int var) {
+        for (int i = 0; i < n; i++) {
+            if (variables[i] == var) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public double getValue(int queryVar, int queryValue) {
+        int index = indexOf(queryVar);
+        if(index > -1){
+            int outcome = queryValue - offsets[index];
+            if (outcome >= 0 && outcome < cardinalities[index]) {
+                return value(outcome * strides[index]);
+            }
         }
         return 0.0;
     }
@@ -129,7 +502,7 @@ class Factor implements Comparable<Factor>{
     @Override
     public int compareTo(Factor other_factor) {
         // Compare the number of variables in each factor
-        switch (Integer.compare(this.values.size(), other_factor.values.size())){
+        switch (Integer.compare(this.size(), other_factor.size())){
             case -1:
                 return -1;  // This factor has fewer variables
             case 1:
@@ -142,12 +515,12 @@ class Factor implements Comparable<Factor>{
         int var_a_ascii = 0;
         int var_b_ascii = 0;
         // Calculate the sum of ASCII values for this factor's variable names
-        for(String var : this.variables){
-            var_a_ascii += var.charAt(0);
+        for(int var : this.variables){
+            var_a_ascii += network.names[var].charAt(0);
         }
         // Calculate the sum of ASCII values for the other factor's variable names
-        for(String var : other_factor.variables){
-            var_b_ascii += var.charAt(0);
+        for(int var : other_factor.variables){
+            var_b_ascii += other_factor.network.names[var].charAt(0);
         }
         if(var_a_ascii > var_b_ascii){
             return -1;
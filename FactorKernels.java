@@ -0,0 +1,158 @@
+// The loops that compute the cells of dense factor products and sum-outs, chosen once at startup
+// The scalar loops run everywhere. When the jdk.incubator.vector module is present (java --add-modules
+// jdk.incubator.vector) and VectorKernels was compiled (vector/VectorKernels.java), its SIMD loops are used instead.
+// Every implementation gives bit-identical cells and the same operation counts: products multiply the inputs in the
+// same order, and each cell still adds the outcomes of the summed out variable one after the other.
+interface FactorKernels {
+    // The plain loops, written so the JIT can unroll them
+    FactorKernels SCALAR = new Scalar();
+
+    // Computes the cells from..to of the product of two tables, given the stride of each along the result variables
+    void multiplyRange(double[] values1, double[] values2, double[] out, int[] cardinalities, int[] strides1, int[] strides2, int from, int to);
+
+    // Computes the cells from..to of a sum-out and returns the additions it counted
+    int sumOutRange(double[] in, double[] out, int[] cardinalities, int[] inStrides, int varStride, int varCard, int from, int to);
+
+    // Computes the cells from..to of a fused product and sum-out and returns the additions it counted
+    int multiplyAndSumOutRange(double[][] inValues, double[] out, int[] cardinalities, int[][] inStrides, int[] varStrides, int varCard, int from, int to);
+
+    // Divides every value by the divisor
+    void divide(double[] values, double divisor);
+
+    // Returns the vector loops if they can be loaded, the scalar ones otherwise
+    static FactorKernels select() {
+        try {
+            return (FactorKernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;  // Not compiled, or the module is missing at run time
+        }
+    }
+    // Returns the loops of the given name: auto (as at startup), scalar or vector
+    static FactorKernels fromLabel(String label) {
+        switch (label) {
+            case "auto":
+                return select();
+            case "scalar":
+                return SCALAR;
+            case "vector":
+                FactorKernels kernels = select();
+                if (kernels == SCALAR) {
+                    throw new IllegalArgumentException("Vector kernels need VectorKernels and --add-modules jdk.incubator.vector");
+                }
+                return kernels;
+            default:
+                throw new IllegalArgumentException("Unknown factor kernels " + label);
+        }
+    }
+
+    class Scalar implements FactorKernels {
+        @Override
+        public void multiplyRange(double[] values1, double[] values2, double[] out, int[] cardinalities, int[] strides1, int[] strides2, int from, int to) {
+            int n = cardinalities.length;
+            int[] assignment = Factor.assignment(from, cardinalities);
+            int index1 = 0;
+            int index2 = 0;
+            for (int j = 0; j < n; j++) {
+                index1 += assignment[j] * strides1[j];
+                index2 += assignment[j] * strides2[j];
+            }
+            for (int i = from; i < to; i++) {
+                out[i] = values1[index1] * values2[index2];
+                for (int j = n - 1; j >= 0; j--) {
+                    if (++assignment[j] < cardinalities[j]) {
+                        index1 += strides1[j];
+                        index2 += strides2[j];
+                        break;
+                    }
+                    index1 -= strides1[j] * (assignment[j] - 1);
+                    index2 -= strides2[j] * (assignment[j] - 1);
+                    assignment[j] = 0;
+                }
+            }
+        }
+
+        @Override
+        public int sumOutRange(double[] in, double[] out, int[] cardinalities, int[] inStrides, int varStride, int varCard, int from, int to) {
+            int n = cardinalities.length;
+            int[] assignment = Factor.assignment(from, cardinalities);
+            int base = 0;
+            for (int j = 0; j < n; j++) {
+                base += assignment[j] * inStrides[j];
+            }
+            int adds = 0;
+            for (int i = from; i < to; i++) {
+                // Sum the values for assignments where the variable is summed out
+                double sum = 0.0;
+                for (int k = 0; k < varCard; k++) {
+                    double value = in[base + k * varStride];
+                    if (sum != 0.0) {
+                        sum += value;
+                        adds++;
+                    } else {
+                        sum = value;
+                    }
+                }
+                out[i] = sum;
+                for (int j = n - 1; j >= 0; j--) {
+                    if (++assignment[j] < cardinalities[j]) {
+                        base += inStrides[j];
+                        break;
+                    }
+                    base -= inStrides[j] * (assignment[j] - 1);
+                    assignment[j] = 0;
+                }
+            }
+            return adds;
+        }
+
+        @Override
+        public int multiplyAndSumOutRange(double[][] inValues, double[] out, int[] cardinalities, int[][] inStrides, int[] varStrides, int varCard, int from, int to) {
+            int m = inValues.length;
+            int[] assignment = Factor.assignment(from, cardinalities);
+            int[] bases = new int[m];
+            for (int f = 0; f < m; f++) {
+                for (int j = 0; j < assignment.length; j++) {
+                    bases[f] += assignment[j] * inStrides[f][j];
+                }
+            }
+            int adds = 0;
+            for (int i = from; i < to; i++) {
+                // Sum the products over the outcomes of the variable, multiplying in the same order as pairwise products
+                double sum = 0.0;
+                for (int k = 0; k < varCard; k++) {
+                    double value = inValues[0][bases[0] + k * varStrides[0]];
+                    for (int f = 1; f < m; f++) {
+                        value *= inValues[f][bases[f] + k * varStrides[f]];
+                    }
+                    if (sum != 0.0) {
+                        sum += value;
+                        adds++;
+                    } else {
+                        sum = value;
+                    }
+                }
+                out[i] = sum;
+                for (int j = assignment.length - 1; j >= 0; j--) {
+                    if (++assignment[j] < cardinalities[j]) {
+                        for (int f = 0; f < m; f++) {
+                            bases[f] += inStrides[f][j];
+                        }
+                        break;
+                    }
+                    for (int f = 0; f < m; f++) {
+                        bases[f] -= inStrides[f][j] * (assignment[j] - 1);
+                    }
+                    assignment[j] = 0;
+                }
+            }
+            return adds;
+        }
+
+        @Override
+        public void divide(double[] values, double divisor) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = values[i] / divisor;
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Intermediate factors of variable elimination shared between queries and threads, bounded by their estimated size
+// A factor is keyed by how it was derived, as in InferenceSession: a CPT by its node and the evidence on its family, a
+// product or elimination step by the variable summed out and the ids of its inputs in the order they were multiplied.
+// Ids are interned here, so two queries that eliminate the same hidden variables over the same part of the network
+// derive equal keys, whatever else their evidence says, and every key stays a few numbers long however deep the
+// derivation. The later query takes the factor together with the counts it took, so its answer is exactly that of a
+// fresh run. The least recently used entries are evicted once the memo passes its memory cap.
+// Networks are held weakly and stored factors do not refer to theirs, so a network the registry evicted or reloaded can
+// be collected; its entries are dropped when it is.
+public class FactorMemo {
+    private static final long CPT = 0;
+    private static final long PRODUCT = 1;
+    private static final long STEP = 2;
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<CompiledNetwork, NetworkRef> networks = new WeakHashMap<>();
+    private final ReferenceQueue<CompiledNetwork> collected = new ReferenceQueue<>();
+    private long nextId;
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    public FactorMemo(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // Returns the memo of one query; it is not thread-safe, but any number of them can share this memo
+    EliminationMemo forQuery() {
+        return new QueryMemo();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    // Returns the weak reference all keys of a network share
+    private synchronized NetworkRef networkRef(CompiledNetwork network) {
+        expunge();
+        return networks.computeIfAbsent(network, n -> new NetworkRef(n, collected));
+    }
+
+    // Returns the id of a CPT derivation, interning it on first use
+    private synchronized long cptId(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(nextId++, null, 0, 0);
+            insert(key, entry);
+        }
+        return entry.id;
+    }
+
+    private synchronized Entry lookup(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return entry;
+    }
+
+    // Keeps a newly derived factor under a new id, or returns the entry another query stored for it in the meantime
+    private synchronized Entry store(Key key, Factor factor, int mulOpers, int addOpers) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(nextId++, detached(factor), mulOpers, addOpers);
+            insert(key, entry);
+        }
+        return entry;
+    }
+
+    private void insert(Key key, Entry entry) {
+        expunge();
+        long size = entry.bytes(key);
+        if (size > maxBytes) {
+            return;  // The id is still unique, so the factors derived from it are keyed correctly
+        }
+        entries.put(key, entry);
+        bytes += size;
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes) {
+            Map.Entry<Key, Entry> evicted = eldest.next();
+            eldest.remove();
+            bytes -= evicted.getValue().bytes(evicted.getKey());
+        }
+    }
+
+    // Drops the entries of networks that were collected
+    private void expunge() {
+        Reference<? extends CompiledNetwork> dead;
+        while ((dead = collected.poll()) != null) {
+            Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key, Entry> entry = iterator.next();
+                if (entry.getKey().network == dead) {
+                    iterator.remove();
+                    bytes -= entry.getValue().bytes(entry.getKey());
+                }
+            }
+        }
+    }
+
+    // A stored factor shares the tables of the one computed, without its network
+    private static Factor detached(Factor factor) {
+        return attached(factor, null);
+    }
+
+    private static Factor attached(Factor factor, CompiledNetwork network) {
+        Factor copy = new Factor(network, factor.variables, factor.offsets, factor.cardinalities, factor.values);
+        copy.cells = factor.cells;
+        return copy;
+    }
+
+    // The factors of one query, each remembered with its id so the factors derived from it can be keyed in turn
+    private final class QueryMemo implements EliminationMemo {
+        private final Map<Factor, Long> ids = new IdentityHashMap<>();
+        private NetworkRef network;
+
+        @Override
+        public Factor cpt(CompiledNetwork compiled, int node, int[] evidence) {
+            if (network == null) {
+                network = networkRef(compiled);
+            }
+            // CPT factors are cheap to build, so only their ids are kept
+            int[] parents = compiled.parents[node];
+            long[] derivation = new long[parents.length + 3];
+            derivation[0] = CPT;
+            derivation[1] = node;
+            for (int i = 0; i < parents.length; i++) {
+                derivation[i + 2] = evidence[parents[i]];
+            }
+            derivation[parents.length + 2] = evidence[node];
+            Factor factor = new Factor(compiled, node, evidence).compact();
+            ids.put(factor, cptId(new Key(network, derivation)));
+            return factor;
+        }
+
+        @Override
+        public Factor multiply(Factor f1, Factor f2, AtomicInteger mulOpers) {
+            Key key = new Key(network, new long[]{PRODUCT, -1, id(f1), id(f2)});
+            Entry entry = lookup(key);
+            if (entry != null) {
+                mulOpers.addAndGet(entry.mulOpers);
+                return reuse(entry, f1.network);
+            }
+            AtomicInteger muls = new AtomicInteger();
+            Factor result = Factor.multiply(f1, f2, muls);
+            mulOpers.addAndGet(muls.get());
+            return remember(key, result, muls.get(), 0);
+        }
+
+        @Override
+        public Factor multiplyAndSumOut(List<Factor> factors, int var, AtomicInteger mulOpers, AtomicInteger addOpers) {
+            long[] derivation = new long[factors.size() + 2];
+            derivation[0] = STEP;
+            derivation[1] = var;
+            for (int i = 0; i < factors.size(); i++) {
+                derivation[i + 2] = id(factors.get(i));
+            }
+            Key key = new Key(network, derivation);
+            Entry entry = lookup(key);
+            if (entry != null) {
+                mulOpers.addAndGet(entry.mulOpers);
+                addOpers.addAndGet(entry.addOpers);
+                return reuse(entry, factors.get(0).network);
+            }
+            AtomicInteger muls = new AtomicInteger();
+            AtomicInteger adds = new AtomicInteger();
+            Factor result = Factor.multiplyAndSumOut(factors, var, muls, adds);
+            mulOpers.addAndGet(muls.get());
+            addOpers.addAndGet(adds.get());
+            return remember(key, result, muls.get(), adds.get());
+        }
+
+        private long id(Factor factor) {
+            Long id = ids.get(factor);
+            if (id == null) {
+                throw new IllegalStateException("Factor was not built by this memo");
+            }
+            return id;
+        }
+
+        private Factor reuse(Entry entry, CompiledNetwork compiled) {
+            Factor factor = attached(entry.factor, compiled);
+            ids.put(factor, entry.id);
+            return factor;
+        }
+
+        private Factor remember(Key key, Factor factor, int mulOpers, int addOpers) {
+            ids.put(factor, store(key, factor, mulOpers, addOpers).id);
+            return factor;
+        }
+    }
+
+    // One per live network, so keys compare networks by reference without holding them
+    private static final class NetworkRef extends WeakReference<CompiledNetwork> {
+        NetworkRef(CompiledNetwork network, ReferenceQueue<CompiledNetwork> queue) {
+            super(network, queue);
+        }
+    }
+
+    // Derivation key of a factor of one network
+    private static final class Key {
+        final NetworkRef network;
+        final long[] derivation;
+        private final int hash;
+
+        Key(NetworkRef network, long[] derivation) {
+            this.network = network;
+            this.derivation = derivation;
+            this.hash = 31 * System.identityHashCode(network) + Arrays.hashCode(derivation);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return network == key.network && hash == key.hash && Arrays.equals(derivation, key.derivation);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        final long id;
+        final Factor factor;  // Null for a CPT, whose entry only interns its id
+        final int mulOpers;
+        final int addOpers;
+
+        Entry(long id, Factor factor, int mulOpers, int addOpers) {
+            this.id = id;
+            this.factor = factor;
+            this.mulOpers = mulOpers;
+            this.addOpers = addOpers;
+        }
+
+        // Rough heap size of the factor and its key
+        long bytes(Key key) {
+            long size = 64 + 8L * key.derivation.length;
+            if (factor == null) {
+                return size;
+            }
+            size += 32 + 8L * factor.values.length + 16L * factor.variables.length;
+            return factor.cells != null ? size + 4L * factor.cells.length : size;
+        }
+    }
+}
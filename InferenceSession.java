@@ -0,0 +1,148 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Incremental variable elimination over one network, for a stream of queries whose evidence changes a little at a time
+// The session keeps every factor the last query built, keyed by how it was derived: a CPT by its node and the evidence
+// on its family, a product or elimination step by its inputs and the variable summed out. A query rebuilds only the
+// factors whose derivation changed, i.e. those that depend on evidence that was added, removed or changed, and
+// reports the counts stored with the reused factors, so its answer is exactly that of a fresh run.
+// A session is not thread-safe.
+public class InferenceSession implements EliminationMemo {
+    private final BayesianNetwork network;
+    private Map<List<Integer>, Entry> previous = new HashMap<>();  // Factors of the last query
+    private Map<List<Integer>, Entry> current = new HashMap<>();   // Factors of the query being answered
+    private final Map<Factor, Integer> ids = new IdentityHashMap<>();  // Derivation id of every factor still held
+    private int nextId;
+    private long reused;
+
+    public InferenceSession(BayesianNetwork network) {
+        this.network = network;
+    }
+
+    public BayesianNetwork getNetwork() {
+        return network;
+    }
+
+    // Computes the posteriors of the query variables, as VariableElimination.marginals does
+    public Marginals marginals(int[] queryVars, int[] evidence, int[] eliminationOrder, EliminationOrdering.Heuristic heuristic, QueryStats stats) {
+        return marginals(queryVars, evidence, eliminationOrder, null, heuristic, stats);
+    }
+    // Computes the posteriors with the variables VariableElimination.prune already found for the query (null to prune here)
+    public Marginals marginals(int[] queryVars, int[] evidence, int[] eliminationOrder, BitSet pruned, EliminationOrdering.Heuristic heuristic, QueryStats stats) {
+        try {
+            return VariableElimination.marginals(network.getCompiled(), queryVars, evidence, eliminationOrder, pruned, heuristic, stats, this);
+        } finally {
+            // Keep only what this query used; a failed query keeps nothing
+            previous = current;
+            current = new HashMap<>();
+            ids.clear();
+            for (Entry entry : previous.values()) {
+                ids.put(entry.factor, entry.id);
+            }
+        }
+    }
+
+    // Factors taken from the previous query
+    public long getReused() {
+        return reused;
+    }
+
+    @Override
+    public Factor cpt(CompiledNetwork compiled, int node, int[] evidence) {
+        int[] parents = compiled.parents[node];
+        Integer[] key = new Integer[parents.length + 3];
+        key[0] = 0;
+        key[1] = node;
+        for (int i = 0; i < parents.length; i++) {
+            key[i + 2] = evidence[parents[i]];
+        }
+        key[parents.length + 2] = evidence[node];
+        Entry entry = lookup(Arrays.asList(key), null, null);
+        if (entry != null) {
+            return entry.factor;
+        }
+        return store(Arrays.asList(key), new Factor(compiled, node, evidence).compact(), 0, 0);
+    }
+
+    @Override
+    public Factor multiply(Factor f1, Factor f2, AtomicInteger mulOpers) {
+        List<Integer> key = Arrays.asList(1, id(f1), id(f2));
+        Entry entry = lookup(key, mulOpers, null);
+        if (entry != null) {
+            return entry.factor;
+        }
+        AtomicInteger muls = new AtomicInteger();
+        Factor result = Factor.multiply(f1, f2, muls);
+        mulOpers.addAndGet(muls.get());
+        return store(key, result, muls.get(), 0);
+    }
+
+    @Override
+    public Factor multiplyAndSumOut(List<Factor> factors, int var, AtomicInteger mulOpers, AtomicInteger addOpers) {
+        Integer[] key = new Integer[factors.size() + 2];
+        key[0] = 2;
+        key[1] = var;
+        for (int i = 0; i < factors.size(); i++) {
+            key[i + 2] = id(factors.get(i));
+        }
+        Entry entry = lookup(Arrays.asList(key), mulOpers, addOpers);
+        if (entry != null) {
+            return entry.factor;
+        }
+        AtomicInteger muls = new AtomicInteger();
+        AtomicInteger adds = new AtomicInteger();
+        Factor result = Factor.multiplyAndSumOut(factors, var, muls, adds);
+        mulOpers.addAndGet(muls.get());
+        addOpers.addAndGet(adds.get());
+        return store(Arrays.asList(key), result, muls.get(), adds.get());
+    }
+
+    // Returns the factor of a derivation if this or the last query built it, adding the counts it took
+    private Entry lookup(List<Integer> key, AtomicInteger mulOpers, AtomicInteger addOpers) {
+        Entry entry = current.get(key);
+        if (entry == null) {
+            entry = previous.get(key);
+            if (entry == null) {
+                return null;
+            }
+            current.put(key, entry);
+            reused++;
+        }
+        if (mulOpers != null) {
+            mulOpers.addAndGet(entry.mulOpers);
+        }
+        if (addOpers != null) {
+            addOpers.addAndGet(entry.addOpers);
+        }
+        return entry;
+    }
+
+    private Factor store(List<Integer> key, Factor factor, int mulOpers, int addOpers) {
+        Entry entry = new Entry(nextId++, factor, mulOpers, addOpers);
+        current.put(key, entry);
+        ids.put(factor, entry.id);
+        return factor;
+    }
+
+    private int id(Factor factor) {
+        Integer id = ids.get(factor);
+        if (id == null) {
+            throw new IllegalStateException("Factor was not built by this session");
+        }
+        return id;
+    }
+
+    private static final class Entry {
+        final int id;
+        final Factor factor;
+        final int mulOpers;
+        final int addOpers;
+
+        Entry(int id, Factor factor, int mulOpers, int addOpers) {
+            this.id = id;
+            this.factor = factor;
+            this.mulOpers = mulOpers;
+            this.addOpers = addOpers;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Junction tree (clique tree) inference engine, compiled once per network
+// Each evidence set is calibrated once by passing messages up and down the tree; every marginal is then a lookup
+public class JunctionTree {
+    private static final int CALIBRATIONS_KEPT = 16;  // Evidence sets whose calibration is kept for later queries
+
+    final CompiledNetwork network;
+    private final int[][] cliques;       // Variables of each clique
+    private final int[] parent;          // Parent of each clique, with clique 0 as the root (-1)
+    private final int[] postOrder;       // Cliques ordered so that children come before their parent
+    private final int[][] children;
+    private final BitSet[] separators;   // Variables each clique shares with its parent
+    private final int[][] assigned;      // Nodes whose CPT is multiplied into each clique
+    private final int[] home;            // Smallest clique containing each variable
+    private final Map<String, Calibration> calibrations;
+
+    // Compiles the network: triangulates its moral graph with min-fill and joins the cliques in a maximum spanning tree
+    public JunctionTree(CompiledNetwork network) {
+        this.network = network;
+        int n = network.size();
+        int[] noEvidence = new int[n];
+        Arrays.fill(noEvidence, CompiledNetwork.NO_EVIDENCE);
+        int[] all = new int[n];
+        for (int var = 0; var < n; var++) {
+            all[var] = var;
+        }
+        EliminationOrdering ordering = new EliminationOrdering(network, noEvidence);
+        List<BitSet> candidates = new ArrayList<>();
+        for (int[] clique : ordering.cliques(ordering.order(all, EliminationOrdering.Heuristic.MIN_FILL))) {
+            candidates.add(toBitSet(clique));
+        }
+
+        // Keep only the maximal cliques (the first copy of duplicates)
+        List<BitSet> maximal = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            boolean contained = false;
+            for (int j = 0; j < candidates.size() && !contained; j++) {
+                if (i != j && isSubset(candidates.get(i), candidates.get(j)) && (j < i || !candidates.get(i).equals(candidates.get(j)))) {
+                    contained = true;
+                }
+            }
+            if (!contained) {
+                maximal.add(candidates.get(i));
+            }
+        }
+        int k = maximal.size();
+        this.cliques = new int[k][];
+        for (int c = 0; c < k; c++) {
+            cliques[c] = maximal.get(c).stream().toArray();
+        }
+
+        // Prim's algorithm on separator sizes; empty separators keep disconnected parts of the network in one tree
+        this.parent = new int[k];
+        int[] weight = new int[k];
+        boolean[] inTree = new boolean[k];
+        Arrays.fill(parent, -1);
+        Arrays.fill(weight, -1);
+        List<List<Integer>> childLists = new ArrayList<>();
+        for (int c = 0; c < k; c++) {
+            childLists.add(new ArrayList<>());
+        }
+        int next = 0;
+        for (int step = 0; step < k; step++) {
+            int current = next;
+            inTree[current] = true;
+            if (parent[current] > -1) {
+                childLists.get(parent[current]).add(current);
+            }
+            next = -1;
+            for (int c = 0; c < k; c++) {
+                if (inTree[c]) {
+                    continue;
+                }
+                BitSet shared = (BitSet) maximal.get(c).clone();
+                shared.and(maximal.get(current));
+                if (shared.cardinality() > weight[c]) {
+                    weight[c] = shared.cardinality();
+                    parent[c] = current;
+                }
+                if (next == -1 || weight[c] > weight[next]) {
+                    next = c;
+                }
+            }
+        }
+        this.children = new int[k][];
+        this.separators = new BitSet[k];
+        for (int c = 0; c < k; c++) {
+            children[c] = childLists.get(c).stream().mapToInt(Integer::intValue).toArray();
+            separators[c] = new BitSet();
+            if (parent[c] > -1) {
+                separators[c] = (BitSet) maximal.get(c).clone();
+                separators[c].and(maximal.get(parent[c]));
+            }
+        }
+        this.postOrder = new int[k];
+        int filled = k;
+        Deque<Integer> stack = new ArrayDeque<>();
+        if (k > 0) {
+            stack.push(0);
+        }
+        while (!stack.isEmpty()) {
+            int c = stack.pop();
+            postOrder[--filled] = c;
+            for (int child : children[c]) {
+                stack.push(child);
+            }
+        }
+
+        // Give each CPT to the smallest clique holding its family, and each variable a home clique
+        List<List<Integer>> assignedLists = new ArrayList<>();
+        for (int c = 0; c < k; c++) {
+            assignedLists.add(new ArrayList<>());
+        }
+        this.home = new int[n];
+        for (int node = 0; node < n; node++) {
+            BitSet family = toBitSet(network.parents[node]);
+            family.set(node);
+            assignedLists.get(smallestClique(maximal, family)).add(node);
+            BitSet self = new BitSet();
+            self.set(node);
+            home[node] = smallestClique(maximal, self);
+        }
+        this.assigned = new int[k][];
+        for (int c = 0; c < k; c++) {
+            assigned[c] = assignedLists.get(c).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        this.calibrations = new LinkedHashMap<String, Calibration>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Calibration> eldest) {
+                return size() > CALIBRATIONS_KEPT;
+            }
+        };
+    }
+
+    // Returns the posteriors of several variables from one calibration, counting its operations once
+    // The counts are those of calibrating for the evidence and normalizing each marginal, whether or not the calibration
+    // was reused
+    public Marginals marginals(int[] vars, int[] evidence) {
+        Calibration calibration = calibrationFor(evidence);
+        Marginals marginals = new Marginals(network, vars);
+        marginals.addOpers = calibration.addOpers;
+        marginals.mulOpers = calibration.mulOpers;
+        for (int i = 0; i < vars.length; i++) {
+            marginals.distributions[i] = calibration.marginals[vars[i]].clone();
+            marginals.addOpers += calibration.normalizeAdds[vars[i]];
+        }
+        return marginals;
+    }
+
+    private Calibration calibrationFor(int[] evidence) {
+        String key = Arrays.toString(evidence);
+        synchronized (calibrations) {
+            Calibration calibration = calibrations.get(key);
+            if (calibration != null) {
+                return calibration;
+            }
+        }
+        // Calibrate outside the lock; two threads racing on the same evidence compute the same result
+        Calibration calibration = calibrate(evidence);
+        synchronized (calibrations) {
+            calibrations.put(key, calibration);
+        }
+        return calibration;
+    }
+
+    // Passes messages from the leaves to the root and back, then reads every marginal from its home clique
+    private Calibration calibrate(int[] evidence) {
+        AtomicInteger mulOpers = new AtomicInteger(0);
+        AtomicInteger addOpers = new AtomicInteger(0);
+        int k = cliques.length;
+        Factor[] potentials = new Factor[k];  // null stands for a potential of all ones
+        for (int c = 0; c < k; c++) {
+            for (int node : assigned[c]) {
+                potentials[c] = times(potentials[c], new Factor(network, node, evidence), mulOpers);
+            }
+        }
+
+        // Upward pass: each clique sends its parent the product of its potential and its children's messages
+        Factor[] up = new Factor[k];
+        for (int c : postOrder) {
+            if (parent[c] == -1) {
+                continue;
+            }
+            Factor product = potentials[c];
+            for (int child : children[c]) {
+                product = times(product, up[child], mulOpers);
+            }
+            up[c] = marginalize(product, separators[c], addOpers);
+        }
+        // Downward pass: each clique receives everything its parent knows except what came from the clique itself
+        Factor[] down = new Factor[k];
+        for (int i = k - 1; i >= 0; i--) {
+            int c = postOrder[i];
+            if (parent[c] == -1) {
+                continue;
+            }
+            int p = parent[c];
+            Factor product = times(potentials[p], down[p], mulOpers);
+            for (int sibling : children[p]) {
+                if (sibling != c) {
+                    product = times(product, up[sibling], mulOpers);
+                }
+            }
+            down[c] = marginalize(product, separators[c], addOpers);
+        }
+
+        // Each clique's belief is built once and every variable homed in the clique is read from it
+        Calibration calibration = new Calibration(network.size());
+        Factor[] beliefs = new Factor[k];
+        boolean[] built = new boolean[k];
+        for (int var = 0; var < network.size(); var++) {
+            int c = home[var];
+            if (!built[c]) {
+                Factor belief = times(potentials[c], down[c], mulOpers);
+                for (int child : children[c]) {
+                    belief = times(belief, up[child], mulOpers);
+                }
+                beliefs[c] = belief;
+                built[c] = true;
+            }
+            Factor belief = beliefs[c];
+            BitSet keep = new BitSet();
+            keep.set(var);
+            Factor marginal = marginalize(belief, keep, addOpers);
+            double[] values = new double[network.cardinalities[var]];
+            double total = 0.0;
+            int adds = 0;
+            if (marginal != null) {
+                int index = marginal.indexOf(var);
+                for (int i = 0; i < marginal.cardinalities[index]; i++) {
+                    double value = marginal.values[i * marginal.strides[index]];
+                    values[marginal.offsets[index] + i] = value;
+                    if (total > 0.0) {
+                        adds++;
+                    }
+                    total += value;
+                }
+            }
+            for (int i = 0; i < values.length; i++) {
+                values[i] = values[i] / total;
+            }
+            calibration.marginals[var] = values;
+            calibration.normalizeAdds[var] = adds;
+        }
+        calibration.mulOpers = mulOpers.get();
+        calibration.addOpers = addOpers.get();
+        return calibration;
+    }
+
+    // Multiplies two factors, where null stands for a factor of all ones
+    private static Factor times(Factor f1, Factor f2, AtomicInteger mulOpers) {
+        if (f1 == null) {
+            return f2;
+        }
+        if (f2 == null) {
+            return f1;
+        }
+        return Factor.multiply(f1, f2, mulOpers);
+    }
+    // Sums out every variable of a factor that is not in keep
+    private static Factor marginalize(Factor factor, BitSet keep, AtomicInteger addOpers) {
+        if (factor == null) {
+            return null;
+        }
+        for (int var : factor.variables.clone()) {
+            if (!keep.get(var)) {
+                factor = Factor.sumOut(factor, var, addOpers);
+            }
+        }
+        return factor;
+    }
+
+    private static BitSet toBitSet(int[] vars) {
+        BitSet set = new BitSet();
+        for (int var : vars) {
+            set.set(var);
+        }
+        return set;
+    }
+
+    private static boolean isSubset(BitSet a, BitSet b) {
+        BitSet rest = (BitSet) a.clone();
+        rest.andNot(b);
+        return rest.isEmpty();
+    }
+    // Returns the smallest clique containing all the given variables
+    private static int smallestClique(List<BitSet> cliques, BitSet vars) {
+        int best = -1;
+        for (int c = 0; c < cliques.size(); c++) {
+            if (isSubset(vars, cliques.get(c)) && (best == -1 || cliques.get(c).cardinality() < cliques.get(best).cardinality())) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    // Marginals of every variable for one evidence set, with the operations it took to compute them
+    private static final class Calibration {
+        final double[][] marginals;
+        final int[] normalizeAdds;
+        int mulOpers;
+        int addOpers;
+
+        Calibration(int size) {
+            this.marginals = new double[size][];
+            this.normalizeAdds = new int[size];
+        }
+    }
+}
@@ -0,0 +1,15 @@
+// Posterior distributions of one or more query variables under the same evidence, with the operations they took
+public class Marginals {
+    final int[] vars;
+    final double[][] distributions;  // Indexed like vars, then by outcome id
+    int addOpers;
+    int mulOpers;
+
+    Marginals(CompiledNetwork network, int[] vars) {
+        this.vars = vars;
+        this.distributions = new double[vars.length][];
+        for (int i = 0; i < vars.length; i++) {
+            distributions[i] = new double[network.cardinalities[vars[i]]];
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Function;
+
+// Loaded networks kept between network lines, keyed by canonical path and checked against the file's modification time
+// The least recently used networks are evicted once their estimated size passes the memory cap
+public class NetworkRegistry {
+    private final long maxBytes;
+    private final Function<String, BayesianNetwork> loader;
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    public NetworkRegistry(long maxBytes, Function<String, BayesianNetwork> loader) {
+        this.maxBytes = maxBytes;
+        this.loader = loader;
+    }
+
+    // Returns the network of a file, loading it unless the registry holds a copy read from the same version of the file
+    public BayesianNetwork get(String path) {
+        Path key;
+        long modified;
+        long size;
+        try {
+            key = Paths.get(path).toRealPath();
+            modified = Files.getLastModifiedTime(key).toMillis();
+            size = Files.size(key);
+        } catch (IOException e) {
+            return loader.apply(path);  // Let the loader report the missing file
+        }
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.modified == modified && entry.size == size) {
+                return entry.network;
+            }
+        }
+        // Load outside the lock; a network racing with itself is loaded twice and the later copy kept
+        BayesianNetwork network = loader.apply(path);
+        if (network.isLoaded()) {
+            store(key, new Entry(network, modified, size, estimatedBytes(network)));
+        }
+        return network;
+    }
+
+    private synchronized void store(Path key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+        bytes += entry.bytes;
+        // Evict from the least recently used end, always keeping the network just loaded
+        Iterator<Map.Entry<Path, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && entries.size() > 1) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            bytes -= evicted.bytes;
+        }
+    }
+
+    // Rough heap size of a network: the CPT as parsed, its compiled copy and the outcome map of each node
+    private static long estimatedBytes(BayesianNetwork network) {
+        long total = 0;
+        for (NodeBase node : network.getNodes().values()) {
+            total += 256 + 64L * node.outcomes.size();
+            if (node.table != null) {
+                total += 16L * node.table.length;
+            }
+            total += 160L * node.cpt.size();
+        }
+        return total;
+    }
+
+    private static final class Entry {
+        final BayesianNetwork network;
+        final long modified;
+        final long size;
+        final long bytes;
+
+        Entry(BayesianNetwork network, long modified, long size, long bytes) {
+            this.network = network;
+            this.modified = modified;
+            this.size = size;
+            this.bytes = bytes;
+        }
+    }
+}
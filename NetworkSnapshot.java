@@ -0,0 +1,153 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+// Binary snapshot of a compiled network, stored next to its XML file as <file>.xml.bnc
+// Layout (little endian): magic, version, size and modification time of the XML, then for each variable its
+// name, outcomes, parent ids and CPT length, and finally every CPT as 8-byte aligned doubles.
+// Snapshots are loaded through a memory-mapped file and the CPTs are read in place, without copying.
+public class NetworkSnapshot {
+    private static final int MAGIC = 0x424E4331;  // "BNC1"
+    private static final int VERSION = 1;
+    static final String EXTENSION = ".bnc";
+
+    // Loads a network through its snapshot, parsing the XML and (re)writing the snapshot when it is missing or stale
+    public static BayesianNetwork load(String xmlPath, boolean streaming) {
+        Path xml = Paths.get(xmlPath);
+        Path snapshot = Paths.get(xmlPath + EXTENSION);
+        try {
+            long size = Files.size(xml);
+            long modified = Files.getLastModifiedTime(xml).toMillis();
+            if (Files.exists(snapshot)) {
+                CompiledNetwork compiled = read(snapshot, size, modified);
+                if (compiled != null) {
+                    return new BayesianNetwork(compiled);
+                }
+            }
+            BayesianNetwork network = new BayesianNetwork(xmlPath, streaming);
+            if (network.isLoaded()) {
+                write(network.getCompiled(), snapshot, size, modified);
+            }
+            return network;
+        } catch (IOException e) {
+            // Without a usable snapshot (e.g. a read-only directory) the network is simply parsed
+            System.err.println("Network snapshot unavailable for " + xmlPath + ": " + e);
+            return new BayesianNetwork(xmlPath, streaming);
+        }
+    }
+
+    // Maps a snapshot and returns its network, or null if it does not match the XML it was written for
+    static CompiledNetwork read(Path snapshot, long xmlSize, long xmlModified) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != xmlSize || buffer.getLong() != xmlModified) {
+                return null;
+            }
+            int n = buffer.getInt();
+            String[] names = new String[n];
+            String[][] outcomes = new String[n][];
+            int[][] parents = new int[n][];
+            int[] tableLengths = new int[n];
+            for (int var = 0; var < n; var++) {
+                names[var] = readString(buffer);
+                outcomes[var] = new String[buffer.getInt()];
+                for (int i = 0; i < outcomes[var].length; i++) {
+                    outcomes[var][i] = readString(buffer);
+                }
+                parents[var] = new int[buffer.getInt()];
+                for (int i = 0; i < parents[var].length; i++) {
+                    parents[var][i] = buffer.getInt();
+                }
+                tableLengths[var] = buffer.getInt();
+            }
+            // Each CPT is a view of the mapped file
+            int offset = align(buffer.position());
+            DoubleBuffer[] cpts = new DoubleBuffer[n];
+            for (int var = 0; var < n; var++) {
+                cpts[var] = buffer.slice(offset, tableLengths[var] * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                offset += tableLengths[var] * Double.BYTES;
+            }
+            return new CompiledNetwork(names, outcomes, parents, cpts);
+        } catch (RuntimeException e) {
+            return null;  // A truncated or corrupt snapshot is rewritten
+        }
+    }
+
+    // Writes the snapshot to a temporary file and moves it into place, so readers never see half a file
+    static void write(CompiledNetwork network, Path snapshot, long xmlSize, long xmlModified) throws IOException {
+        int n = network.size();
+        byte[][] names = new byte[n][];
+        byte[][][] outcomes = new byte[n][][];
+        int size = 4 + 4 + 8 + 8 + 4;
+        long doubles = 0;
+        for (int var = 0; var < n; var++) {
+            names[var] = network.names[var].getBytes(StandardCharsets.UTF_8);
+            size += 4 + names[var].length + 4;
+            outcomes[var] = new byte[network.cardinalities[var]][];
+            for (int i = 0; i < outcomes[var].length; i++) {
+                outcomes[var][i] = network.outcomes[var][i].getBytes(StandardCharsets.UTF_8);
+                size += 4 + outcomes[var][i].length;
+            }
+            size += 4 + 4 * network.parents[var].length + 4;
+            doubles += network.cpts[var].limit();
+        }
+        int tablesOffset = align(size);
+        if (tablesOffset + doubles * Double.BYTES > Integer.MAX_VALUE) {
+            throw new IOException("Network too large for a snapshot");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) (tablesOffset + doubles * Double.BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(xmlSize).putLong(xmlModified).putInt(n);
+        for (int var = 0; var < n; var++) {
+            buffer.putInt(names[var].length).put(names[var]);
+            buffer.putInt(outcomes[var].length);
+            for (byte[] outcome : outcomes[var]) {
+                buffer.putInt(outcome.length).put(outcome);
+            }
+            buffer.putInt(network.parents[var].length);
+            for (int parent : network.parents[var]) {
+                buffer.putInt(parent);
+            }
+            buffer.putInt(network.cpts[var].limit());
+        }
+        buffer.position(tablesOffset);
+        for (int var = 0; var < n; var++) {
+            DoubleBuffer table = network.cpts[var];
+            for (int i = 0; i < table.limit(); i++) {
+                buffer.putDouble(table.get(i));
+            }
+        }
+        buffer.flip();
+
+        Path temp = Files.createTempFile(snapshot.toAbsolutePath().getParent(), snapshot.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    // Rounds an offset up to a multiple of 8, so the doubles are aligned in the mapped file
+    private static int align(int offset) {
+        return (offset + 7) & ~7;
+    }
+}
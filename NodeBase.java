@@ -3,10 +3,11 @@ import java.util.*;
 // Class to represent a node in the Bayesian Network
 public class NodeBase {
     String name;
-    ArrayList<String> outcomes;
+    List<String> outcomes;
     List<NodeBase> parents;
     List<NodeBase> children;
     Map<List<String>, Double> cpt;  // Conditional probability table
+    double[] table;  // The same table as parsed, in the XML TABLE order
 
     public NodeBase(String name, ArrayList<String> outcomes) {
         this.name = name;
@@ -15,6 +16,13 @@ public class NodeBase {
         this.children = new ArrayList<>();
         this.cpt = new HashMap<>();
     }
+    // Makes the node read-only once the network is complete, so it can be shared between query threads
+    public void freeze() {
+        this.outcomes = Collections.unmodifiableList(outcomes);
+        this.parents = Collections.unmodifiableList(parents);
+        this.children = Collections.unmodifiableList(children);
+        this.cpt = Collections.unmodifiableMap(cpt);
+    }
     // Adds a parent node
     public void addParent(NodeBase parent) {
         parents.add(parent);
@@ -38,6 +46,7 @@ public class NodeBase {
     }
     // Sets the conditional probability table
     public void setCPT(double[] table) {
+        this.table = table;
         // Generate all combinations of parent outcomes
         List<List<String>> parentCombinations = generateCombinations(parents);
 
@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Batched output of answers: each answer is formatted straight into one byte buffer, which goes to the file when full
+// A probability is written from the digits of round(p * 1e5), the text String.format("%.5f") gives the rounded value,
+// so no String is built per answer.
+public class OutputWriter implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final byte[] digits = new byte[20];
+
+    private OutputWriter(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    // Opens a file for appending, creating it if it does not exist
+    public static OutputWriter append(Path path) throws IOException {
+        return new OutputWriter(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+    }
+
+    // Writes the output line of an answer
+    public void write(Answer answer) throws IOException {
+        if (answer.marginals == null) {
+            text(answer.independent ? "yes\n" : "no\n");
+            return;
+        }
+        Marginals marginals = answer.marginals;
+        if (answer.outcome > -1) {
+            probability(marginals.distributions[0][answer.outcome]);
+        } else {
+            // "var=outcome:probability" for every outcome of every variable, as Answer.format writes them
+            for (int i = 0; i < marginals.vars.length; i++) {
+                int var = marginals.vars[i];
+                for (int outcome = 0; outcome < marginals.distributions[i].length; outcome++) {
+                    if (i > 0 || outcome > 0) {
+                        put((byte) ' ');
+                    }
+                    text(answer.network.names[var]);
+                    put((byte) '=');
+                    text(answer.network.outcomes[var][outcome]);
+                    put((byte) ':');
+                    probability(marginals.distributions[i][outcome]);
+                }
+            }
+        }
+        put((byte) ',');
+        number(marginals.addOpers);
+        put((byte) ',');
+        number(marginals.mulOpers);
+        put((byte) '\n');
+    }
+
+    // Writes the buffered output to the file
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Writes a probability with five decimals
+    private void probability(double p) throws IOException {
+        long scaled = Math.round(p * 100000.0);
+        if (scaled < 0) {
+            put((byte) '-');
+            scaled = -scaled;
+        }
+        number(scaled / 100000);
+        put((byte) '.');
+        long fraction = scaled % 100000;
+        for (long unit = 10000; unit > 0; unit /= 10) {
+            put((byte) ('0' + fraction / unit % 10));
+        }
+    }
+
+    private void number(long value) throws IOException {
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (length > 0) {
+            put(digits[--length]);
+        }
+    }
+
+    private void text(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+                    put(b);
+                }
+                return;
+            }
+        }
+        for (int i = 0; i < text.length(); i++) {
+            put((byte) text.charAt(i));
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put(b);
+    }
+}
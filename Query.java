@@ -0,0 +1,115 @@
+import java.util.*;
+
+// A query line parsed once into its parts: "P(X=x|E=e) order", "P(X,Y|E=e) order" or "A-B|E=e"
+// The parser scans the line with indexOf instead of chains of split, so the only strings it makes are the names.
+public final class Query {
+    // Kinds of query lines
+    public enum Kind {
+        PROBABILITY,   // P(X=x|E=e): the probability of one outcome
+        POSTERIOR,     // P(X|E=e) or P(X,Y|E=e): every outcome of each query variable
+        INDEPENDENCE   // A-B|E=e: whether A and B are independent given the evidence
+    }
+
+    final String line;
+    final Kind kind;
+    final List<String> queryVars;    // The query variables, or the two nodes of an independence query
+    final String queryValue;         // Outcome of a probability query, null otherwise
+    final Map<String, String> evidence;
+    final List<String> hiddenVars;   // Elimination order given on the line
+
+    private Query(String line, Kind kind, List<String> queryVars, String queryValue, Map<String, String> evidence, List<String> hiddenVars) {
+        this.line = line;
+        this.kind = kind;
+        this.queryVars = queryVars;
+        this.queryValue = queryValue;
+        this.evidence = evidence;
+        this.hiddenVars = hiddenVars;
+    }
+
+    // Parses a query line, or returns null (after reporting it on stderr) if it is malformed
+    public static Query parse(String line) {
+        if (line.startsWith("P(")) {
+            return parseProbability(line);
+        }
+        return parseIndependence(line);
+    }
+
+    private static Query parseProbability(String line) {
+        // "P(" body ")" [" " order]
+        int space = line.indexOf(' ');
+        int end = space > -1 ? space : line.length();
+        List<String> hidden = new ArrayList<>();
+        if (space > -1) {
+            int orderEnd = line.indexOf(' ', space + 1);
+            split(line, space + 1, orderEnd > -1 ? orderEnd : line.length(), '-', hidden);
+        }
+
+        int bar = line.indexOf('|', 2);
+        int queryEnd = bar > -1 && bar < end - 1 ? bar : end - 1;
+        Map<String, String> evidence = new HashMap<>();
+        if (queryEnd == bar) {
+            int evidenceEnd = line.indexOf('|', bar + 1);
+            parseEvidence(line, bar + 1, evidenceEnd > -1 && evidenceEnd < end - 1 ? evidenceEnd : end - 1, false, evidence);
+        }
+
+        int equals = line.indexOf('=', 2);
+        if (equals > -1 && equals < queryEnd) {
+            int valueEnd = line.indexOf('=', equals + 1);
+            String value = line.substring(equals + 1, valueEnd > -1 && valueEnd < queryEnd ? valueEnd : queryEnd);
+            return new Query(line, Kind.PROBABILITY, Collections.singletonList(line.substring(2, equals)), value, evidence, hidden);
+        }
+        List<String> vars = new ArrayList<>();
+        split(line, 2, queryEnd, ',', vars);
+        return new Query(line, Kind.POSTERIOR, vars, null, evidence, hidden);
+    }
+
+    private static Query parseIndependence(String line) {
+        int bar = line.indexOf('|');
+        int nodesEnd = bar > -1 ? bar : line.length();
+        List<String> nodes = new ArrayList<>(2);
+        int dash = line.indexOf('-');
+        if (dash > -1 && dash < nodesEnd) {
+            nodes.add(line.substring(0, dash).trim());
+            nodes.add(line.substring(dash + 1, nodesEnd).trim());
+        }
+        if (nodes.size() != 2 || nodes.get(1).indexOf('-') > -1 || nodes.get(0).isEmpty() || nodes.get(1).isEmpty()) {
+            System.err.println("Query format incorrect. Expected format: nodeA-nodeB | evidence");
+            return null;
+        }
+        Map<String, String> evidence = new HashMap<>();
+        if (bar > -1) {
+            int evidenceEnd = line.indexOf('|', bar + 1);
+            parseEvidence(line, bar + 1, evidenceEnd > -1 ? evidenceEnd : line.length(), true, evidence);
+        }
+        return new Query(line, Kind.INDEPENDENCE, nodes, null, evidence, Collections.emptyList());
+    }
+
+    // Adds the "var=value" pairs between from and to, separated by commas, to the evidence
+    private static void parseEvidence(String line, int from, int to, boolean trim, Map<String, String> evidence) {
+        List<String> pairs = new ArrayList<>();
+        split(line, from, to, ',', pairs);
+        for (String pair : pairs) {
+            int equals = pair.indexOf('=');
+            if (equals == -1) {
+                throw new IllegalArgumentException("Malformed evidence " + pair);
+            }
+            int valueEnd = pair.indexOf('=', equals + 1);
+            String var = pair.substring(0, equals);
+            String value = pair.substring(equals + 1, valueEnd > -1 ? valueEnd : pair.length());
+            evidence.put(trim ? var.trim() : var, trim ? value.trim() : value);
+        }
+    }
+    // Adds the non-empty parts of line[from, to) between separators to parts
+    private static void split(String line, int from, int to, char separator, List<String> parts) {
+        while (from < to) {
+            int next = line.indexOf(separator, from);
+            if (next == -1 || next > to) {
+                next = to;
+            }
+            if (next > from) {
+                parts.add(line.substring(from, next));
+            }
+            from = next + 1;
+        }
+    }
+}
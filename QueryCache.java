@@ -0,0 +1,109 @@
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+// Bounded LRU cache of query answers, shared by all queries of a run
+// Keys are canonical: evidence is sorted by variable, so the same query written in a different order is a hit
+public class QueryCache {
+    private final Map<Key, Object> entries;
+    private long hits;
+    private long misses;
+
+    public QueryCache(int capacity) {
+        this.entries = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // Returns the cached answer of a probability query, computing it on a miss
+    // The method (engine and order heuristic) is part of the key, since it changes the counts
+    @SuppressWarnings("unchecked")
+    public <T> T probability(CompiledNetwork network, String queryVar, String queryValue, Map<String, String> evidence, List<String> eliminationOrder,
+                             String method, Supplier<T> compute) {
+        Key key = new Key(network, "P(" + queryVar + "=" + queryValue + "|" + canonical(evidence, true) + ") " + String.join("-", eliminationOrder) + " " + method);
+        Object cached = lookup(key);
+        if (cached != null) {
+            return (T) cached;
+        }
+        T result = compute.get();
+        store(key, result);
+        return result;
+    }
+    // Returns the cached independence answer of two nodes, computing it on a miss (only the evidence variables matter)
+    // d-separation is symmetric, so the pair is keyed in name order and "A-B|E" and "B-A|E" share an entry
+    public boolean independence(CompiledNetwork network, String nodeA, String nodeB, Map<String, String> evidence, BooleanSupplier compute) {
+        String pair = nodeA.compareTo(nodeB) <= 0 ? nodeA + "-" + nodeB : nodeB + "-" + nodeA;
+        Key key = new Key(network, pair + "|" + canonical(evidence, false));
+        Object cached = lookup(key);
+        if (cached != null) {
+            return (Boolean) cached;
+        }
+        boolean result = compute.getAsBoolean();
+        store(key, result);
+        return result;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private synchronized Object lookup(Key key) {
+        Object cached = entries.get(key);
+        if (cached != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return cached;
+    }
+
+    private synchronized void store(Key key, Object value) {
+        entries.put(key, value);
+    }
+    // Writes the evidence sorted by variable, with or without the observed values
+    private static String canonical(Map<String, String> evidence, boolean withValues) {
+        StringBuilder builder = new StringBuilder();
+        for (String var : new TreeSet<>(evidence.keySet())) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(var);
+            if (withValues) {
+                builder.append('=').append(evidence.get(var));
+            }
+        }
+        return builder.toString();
+    }
+
+    // Cache key: the network instance and the canonical text of the query
+    private static final class Key {
+        private final CompiledNetwork network;
+        private final String query;
+
+        Key(CompiledNetwork network, String query) {
+            this.network = network;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return network == key.network && query.equals(key.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(network) + query.hashCode();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+
+// Long-running query server: networks stay loaded in the network registry (and the JIT warm) between queries
+// The protocol is the input file format, one line at a time. A network line ("net.xml" or "net.xml jt") selects the
+// session's network and is answered with "ok"; a query line is answered with its output line ("0.12345,2,8",
+// "yes" or "no"); a line that cannot be answered gets "error: <reason>". Every non-blank line gets exactly one reply.
+public class QueryServer {
+    // Serves one session on standard input and output, until the input ends
+    public void serveStdio() throws IOException {
+        serve(System.in, System.out);
+    }
+    // Accepts connections on a local port and serves each on its own thread, until the process is stopped
+    public void serveSocket(int port) throws IOException {
+        ExecutorService sessions = sessionExecutor();
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.println("Listening on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket socket = server.accept();
+                sessions.execute(() -> {
+                    try (Socket client = socket) {
+                        serve(client.getInputStream(), client.getOutputStream());
+                    } catch (IOException e) {
+                        System.err.println("Session ended: " + e);
+                    }
+                });
+            }
+        } finally {
+            sessions.shutdownNow();
+        }
+    }
+
+    // Answers the lines of one session in order
+    void serve(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        BayesianNetwork network = null;
+        Ex1.Engine engine = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String reply;
+            try {
+                Ex1.Engine lineEngine = Ex1.networkEngine(line);
+                if (lineEngine != null) {
+                    network = Ex1.loadNetwork(line);
+                    if (!network.isLoaded()) {
+                        network = null;
+                        throw new IllegalArgumentException("could not load " + Ex1.networkPath(line));
+                    }
+                    engine = lineEngine;
+                    reply = "ok\n";
+                } else if (network == null) {
+                    reply = "error: no network loaded\n";
+                } else {
+                    reply = Ex1.answerQuery(line, network, engine);
+                    if (reply == null) {
+                        reply = "error: malformed query\n";
+                    }
+                }
+            } catch (RuntimeException e) {
+                // An unknown variable or outcome fails the query, not the session
+                reply = "error: " + reason(e) + "\n";
+            }
+            writer.write(reply);
+            writer.flush();
+        }
+    }
+
+    // The reason given in an error reply: the exception's message, or its class for one without a message, on one line
+    private static String reason(RuntimeException e) {
+        String message = e.getMessage();
+        if (message == null || message.trim().isEmpty()) {
+            return e.getClass().getName();
+        }
+        return message.replaceAll("[\r\n]+", " ").trim();
+    }
+
+    // One virtual thread per session where the runtime has them (Java 21+), a thread pool otherwise
+    private static ExecutorService sessionExecutor() {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
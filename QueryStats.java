@@ -0,0 +1,114 @@
+import java.io.PrintStream;
+import java.util.*;
+
+// Instrumentation record of one query: wall time per phase, the largest factor, the factors created and the
+// Bayes Ball nodes visited. The inference methods take a QueryStats that may be null, and skip every
+// measurement (including reading the clock) when it is.
+public class QueryStats {
+    private final String query;
+    long totalNanos;
+    long pruneNanos;      // Bayes Ball and ancestor pruning
+    long orderNanos;      // Heuristic reordering, when one is used
+    long initNanos;       // Building the CPT factors
+    long finalNanos;      // Multiplying the remaining factors and normalizing
+    private int steps;
+    private int[] stepVars = new int[8];
+    private long[] stepNanos = new long[8];
+    private long[] stepSizes = new long[8];  // Cells of the product each step sums a variable out of
+    long peakFactorSize;
+    int factorsCreated;
+    int nodesVisited;
+
+    public QueryStats(String query) {
+        this.query = query;
+    }
+
+    // Records a factor the inference built (or, for fused steps, would have built)
+    void factor(long size) {
+        factorsCreated++;
+        peakFactorSize = Math.max(peakFactorSize, size);
+    }
+    // Records an elimination step
+    void step(int var, long nanos, long productSize) {
+        if (steps == stepVars.length) {
+            stepVars = Arrays.copyOf(stepVars, steps * 2);
+            stepNanos = Arrays.copyOf(stepNanos, steps * 2);
+            stepSizes = Arrays.copyOf(stepSizes, steps * 2);
+        }
+        stepVars[steps] = var;
+        stepNanos[steps] = nanos;
+        stepSizes[steps++] = productSize;
+        peakFactorSize = Math.max(peakFactorSize, productSize);
+    }
+    // Time spent in all the elimination steps
+    long eliminationNanos() {
+        long total = 0;
+        for (int i = 0; i < steps; i++) {
+            total += stepNanos[i];
+        }
+        return total;
+    }
+
+    // One line of space separated key=value fields; steps are listed as variable:time/product size
+    public String toRecord(CompiledNetwork network) {
+        StringBuilder record = new StringBuilder();
+        record.append("query=").append(query.replace(' ', '_'))
+                .append(" total=").append(micros(totalNanos))
+                .append(" prune=").append(micros(pruneNanos))
+                .append(" order=").append(micros(orderNanos))
+                .append(" init=").append(micros(initNanos))
+                .append(" eliminate=").append(micros(eliminationNanos()))
+                .append(" normalize=").append(micros(finalNanos))
+                .append(" peak=").append(peakFactorSize)
+                .append(" factors=").append(factorsCreated)
+                .append(" visited=").append(nodesVisited)
+                .append(" steps=");
+        for (int i = 0; i < steps; i++) {
+            record.append(i > 0 ? "," : "").append(network != null ? network.names[stepVars[i]] : String.valueOf(stepVars[i]))
+                    .append(':').append(micros(stepNanos[i])).append('/').append(stepSizes[i]);
+        }
+        return record.toString();
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.1fus", nanos / 1000.0);
+    }
+
+    // Aggregates the records of a run into power-of-two histograms, safe to share between threads
+    public static final class Summary {
+        private static final String[] METRICS = {"total us", "prune us", "init us", "eliminate us", "normalize us",
+                "peak factor size", "factors created", "nodes visited"};
+        private final long[][] buckets = new long[METRICS.length][64];  // Bucket b counts values in [2^(b-1), 2^b), bucket 0 counts 0
+        private final long[] sums = new long[METRICS.length];
+        private final long[] maxima = new long[METRICS.length];
+        private long count;
+
+        public synchronized void add(QueryStats stats) {
+            long[] values = {stats.totalNanos / 1000, stats.pruneNanos / 1000, stats.initNanos / 1000,
+                    stats.eliminationNanos() / 1000, stats.finalNanos / 1000, stats.peakFactorSize,
+                    stats.factorsCreated, stats.nodesVisited};
+            for (int m = 0; m < values.length; m++) {
+                buckets[m][64 - Long.numberOfLeadingZeros(values[m])]++;
+                sums[m] += values[m];
+                maxima[m] = Math.max(maxima[m], values[m]);
+            }
+            count++;
+        }
+
+        public synchronized void dump(PrintStream out) {
+            out.println("Query statistics over " + count + " queries");
+            if (count == 0) {
+                return;
+            }
+            for (int m = 0; m < METRICS.length; m++) {
+                out.println(String.format(Locale.ROOT, "  %s: mean %.1f, max %d", METRICS[m], (double) sums[m] / count, maxima[m]));
+                for (int b = 0; b < 64; b++) {
+                    if (buckets[m][b] > 0) {
+                        long low = b == 0 ? 0 : 1L << (b - 1);
+                        out.println(String.format(Locale.ROOT, "    [%d, %d) %d", low, b == 0 ? 1 : low * 2, buckets[m][b]));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+// Streaming XMLBIF loader built on StAX: one pass over the file, no DOM
+// TABLE numbers are parsed straight from the parser's character buffer into a double[]
+class StaxNetworkLoader {
+    private final BayesianNetwork network;
+    private final List<PendingDefinition> pending = new ArrayList<>();  // Definitions that mention a variable not read yet
+
+    // State of the element being read
+    private final StringBuilder text = new StringBuilder();
+    private String name;
+    private final ArrayList<String> outcomes = new ArrayList<>();
+    private String forVar;
+    private final ArrayList<String> givenVars = new ArrayList<>();
+    private final TableParser table = new TableParser();
+
+    private StaxNetworkLoader(BayesianNetwork network) {
+        this.network = network;
+    }
+
+    // Reads the variables and definitions of an XMLBIF file into the network; returns false if the file could not be read
+    static boolean load(BayesianNetwork network, String path) {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(path))) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                new StaxNetworkLoader(network).read(reader);
+            } finally {
+                reader.close();
+            }
+            return true;
+        } catch (XMLStreamException e) {
+            e.printStackTrace();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    private void read(XMLStreamReader reader) throws XMLStreamException {
+        boolean inTable = false;
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    text.setLength(0);
+                    String element = reader.getLocalName();
+                    if (element.equals("VARIABLE")) {
+                        name = null;
+                        outcomes.clear();
+                    } else if (element.equals("DEFINITION")) {
+                        forVar = null;
+                        givenVars.clear();
+                        table.reset();
+                    } else if (element.equals("TABLE")) {
+                        inTable = true;
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (inTable) {
+                        table.parse(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    } else {
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    endElement(reader.getLocalName());
+                    if (reader.getLocalName().equals("TABLE")) {
+                        inTable = false;
+                        table.endNumber();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        // Definitions that came before the variables they mention
+        for (PendingDefinition definition : pending) {
+            define(definition.forVar, definition.givenVars, definition.table);
+        }
+    }
+
+    private void endElement(String element) {
+        switch (element) {
+            case "NAME":
+                name = text.toString();
+                break;
+            case "OUTCOME":
+                outcomes.add(text.toString());
+                break;
+            case "FOR":
+                forVar = text.toString();
+                break;
+            case "GIVEN":
+                givenVars.add(text.toString());
+                break;
+            case "VARIABLE":
+                network.addNode(new NodeBase(name, outcomes));
+                break;
+            case "DEFINITION":
+                boolean known = network.getNode(forVar) != null;
+                for (String given : givenVars) {
+                    known &= network.getNode(given) != null;
+                }
+                if (known) {
+                    define(forVar, givenVars, table.toArray());
+                } else {
+                    pending.add(new PendingDefinition(forVar, new ArrayList<>(givenVars), table.toArray()));
+                }
+                break;
+            default:
+                break;
+        }
+        text.setLength(0);
+    }
+    // Adding the parents and CPT to the node
+    private void define(String forVar, ArrayList<String> givenVars, double[] values) {
+        NodeBase node = network.getNode(forVar);
+        if (node != null) {
+            node.setParents(network, givenVars);
+            node.setCPT(values);
+        }
+    }
+
+    // A definition kept until the end of the file
+    private static final class PendingDefinition {
+        final String forVar;
+        final ArrayList<String> givenVars;
+        final double[] table;
+
+        PendingDefinition(String forVar, ArrayList<String> givenVars, double[] table) {
+            this.forVar = forVar;
+            this.givenVars = givenVars;
+            this.table = table;
+        }
+    }
+
+    // Parses whitespace separated decimal numbers from character chunks, which may split a number anywhere
+    // Numbers with at most 15 significant digits and a small exponent are converted exactly without building a String
+    static final class TableParser {
+        private static final double[] POWERS_OF_TEN = {
+                1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+                1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+        private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+        private double[] values = new double[16];
+        private int size;
+
+        // The number being read
+        private final StringBuilder token = new StringBuilder();  // Only turned into a String for the slow path
+        private long mantissa;
+        private int digits;          // Significant digits read into the mantissa
+        private boolean anyDigit;    // Whether the mantissa has a digit, leading zeros included
+        private int scale;           // Digits after the decimal point
+        private boolean negative;
+        private boolean fraction;
+        private boolean inExponent;
+        private boolean negativeExponent;
+        private int exponent;
+        private boolean slow;        // Anything unusual is left to Double.parseDouble
+
+        void reset() {
+            size = 0;
+            token.setLength(0);
+        }
+
+        void parse(char[] chars, int start, int length) {
+            for (int i = start; i < start + length; i++) {
+                char c = chars[i];
+                if (Character.isWhitespace(c)) {
+                    endNumber();
+                    continue;
+                }
+                if (token.length() == 0) {
+                    startNumber();
+                }
+                token.append(c);
+                // A sign may only start the number or its exponent; anything else is left to Double.parseDouble, which
+                // rejects a malformed number as the DOM loader does
+                if (c >= '0' && c <= '9') {
+                    if (inExponent) {
+                        exponent = Math.min(exponent * 10 + (c - '0'), 10000);
+                    } else {
+                        anyDigit = true;
+                        if (mantissa != 0 || c != '0' || fraction) {
+                            if (mantissa >= MAX_EXACT_MANTISSA / 10) {
+                                slow = true;
+                            }
+                            mantissa = mantissa * 10 + (c - '0');
+                            digits++;
+                            if (fraction) {
+                                scale++;
+                            }
+                        }
+                    }
+                } else if (c == '.' && !fraction && !inExponent) {
+                    fraction = true;
+                } else if ((c == 'e' || c == 'E') && !inExponent && anyDigit) {
+                    inExponent = true;
+                } else if ((c == '-' || c == '+') && token.length() == 1) {
+                    negative = c == '-';
+                } else if ((c == '-' || c == '+') && inExponent && (token.charAt(token.length() - 2) == 'e' || token.charAt(token.length() - 2) == 'E')) {
+                    negativeExponent = c == '-';
+                } else {
+                    slow = true;
+                }
+            }
+        }
+        // Finishes the number being read, if any
+        void endNumber() {
+            if (token.length() == 0) {
+                return;
+            }
+            char last = token.charAt(token.length() - 1);
+            if (!anyDigit || (last < '0' || last > '9') && last != '.') {
+                slow = true;  // No digits, or an exponent or sign without digits after it
+            }
+            int power = (negativeExponent ? -exponent : exponent) - scale;
+            double value;
+            if (!slow && digits <= 15 && power >= -22 && power <= 22) {
+                // Both the mantissa and the power of ten are exact, so one multiplication or division rounds correctly
+                value = power >= 0 ? mantissa * POWERS_OF_TEN[power] : mantissa / POWERS_OF_TEN[-power];
+                value = negative ? -value : value;
+            } else {
+                value = Double.parseDouble(token.toString());
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+            token.setLength(0);
+        }
+
+        double[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        private void startNumber() {
+            mantissa = 0;
+            digits = 0;
+            anyDigit = false;
+            scale = 0;
+            negative = false;
+            fraction = false;
+            inExponent = false;
+            negativeExponent = false;
+            exponent = 0;
+            slow = false;
+        }
+    }
+}
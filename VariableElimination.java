@@ -1,63 +1,176 @@
-
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class VariableElimination {
 
     public static String variable_elimination(BayesianNetwork bn, String queryVar, String queryValue, Map<String, String> evidence, List<String> eliminationOrder) {
-        List<Factor> factors = initializeFactors(bn, evidence);  // Initialize factors based on the network and evidence
+        return variable_elimination(bn, queryVar, queryValue, evidence, eliminationOrder, null);
+    }
+    // Runs the elimination with the hidden variables reordered by a heuristic (or in the given order if it is null)
+    public static String variable_elimination(BayesianNetwork bn, String queryVar, String queryValue, Map<String, String> evidence, List<String> eliminationOrder, EliminationOrdering.Heuristic heuristic) {
+        return variable_elimination(bn, queryVar, queryValue, evidence, eliminationOrder, heuristic, null);
+    }
+    // Runs the elimination and records its phases in stats, unless stats is null
+    public static String variable_elimination(BayesianNetwork bn, String queryVar, String queryValue, Map<String, String> evidence, List<String> eliminationOrder, EliminationOrdering.Heuristic heuristic, QueryStats stats) {
+        // Translate the query into ids once, so the elimination itself never looks anything up by name
+        CompiledNetwork network = bn.getCompiled();
+        int query = network.id(queryVar);
+        return variable_elimination(network, query, network.outcomeId(query, queryValue), network.evidence(evidence), network.ids(eliminationOrder), heuristic, stats);
+    }
+
+    public static String variable_elimination(CompiledNetwork network, int queryVar, int queryValue, int[] evidence, int[] eliminationOrder, EliminationOrdering.Heuristic heuristic) {
+        return variable_elimination(network, queryVar, queryValue, evidence, eliminationOrder, heuristic, null);
+    }
+
+    public static String variable_elimination(CompiledNetwork network, int queryVar, int queryValue, int[] evidence, int[] eliminationOrder, EliminationOrdering.Heuristic heuristic, QueryStats stats) {
+        Marginals marginals = marginals(network, new int[]{queryVar}, evidence, eliminationOrder, heuristic, stats);
+        double result = marginals.distributions[0][queryValue];
+        // Return the result along with the number of addition and multiplication operations
+        return Math.round(result * 100000.0) / 100000.0 + "," + marginals.addOpers + "," + marginals.mulOpers;
+    }
+
+    // Computes the posterior of each query variable given the evidence, sharing the work they have in common
+    // Pruning keeps what any query needs, and the hidden variables are eliminated once; each query then only eliminates
+    // the other query variables. With one query variable this is exactly the single query elimination, counts included.
+    public static Marginals marginals(CompiledNetwork network, int[] queryVars, int[] evidence, int[] eliminationOrder, EliminationOrdering.Heuristic heuristic, QueryStats stats) {
+        return marginals(network, queryVars, evidence, eliminationOrder, null, heuristic, stats, EliminationMemo.DIRECT);
+    }
+    // Computes the posteriors, taking every factor from the memo
+    // pruned is the result of prune for the same query when the caller already has it (e.g. from planning), null otherwise
+    static Marginals marginals(CompiledNetwork network, int[] queryVars, int[] evidence, int[] eliminationOrder, BitSet pruned, EliminationOrdering.Heuristic heuristic, QueryStats stats,
+                               EliminationMemo memo) {
+        long start = stats != null ? System.nanoTime() : 0;
         AtomicInteger mulOpers = new AtomicInteger(0);  // Counter for multiplication operations
         AtomicInteger addOpers = new AtomicInteger(0);  // Counter for addition operations
 
-        BayesBall ball = new BayesBall(bn);
-        Iterator<String> iterator = eliminationOrder.iterator();
-
-        // Remove variables from elimination order that are not ancestors of the query variable or are independent of the query variable given the evidence
-        while (iterator.hasNext()) {
-            String var = iterator.next();;
-            if (!isAncestor(var, queryVar, evidence, bn) || ball.areIndependent(queryVar, var, evidence)) {
-                factors.removeIf(fac -> fac.contains(var));
-                iterator.remove();
+        if (pruned == null) {
+            pruned = prune(network, queryVars, evidence, eliminationOrder, stats);
+            if (stats != null) {
+                stats.pruneNanos = System.nanoTime() - start;
             }
         }
-        // Process each variable in the elimination order
-        if(!eliminationOrder.isEmpty()){
-            for (String var : eliminationOrder) {
-                List<Factor> relevantFactors = getRelevantFactors(factors, var);
-                factors.removeAll(relevantFactors);
-                Factor newFactor = multiplyAndSumOut(relevantFactors, var, mulOpers, addOpers);
-                factors.add(newFactor);
-                Collections.sort(factors);
+        int[] order = remaining(eliminationOrder, pruned);
+        if (stats != null) {
+            start = System.nanoTime();
+        }
+        // Only factors that do not mention a pruned variable are built
+        List<Factor> factors = initializeFactors(network, evidence, pruned, stats, memo);
+        if (stats != null) {
+            stats.initNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+        }
+        if (heuristic != null) {
+            order = EliminationOrdering.forFactors(network, factors, evidence).order(order, heuristic);
+            if (stats != null) {
+                stats.orderNanos = System.nanoTime() - start;
             }
-
+        }
+        // Process each variable in the elimination order
+        for (int var : order) {
+            eliminate(factors, var, mulOpers, addOpers, stats, memo);
         }
 
-        // Multiply all remaining factors to get the final result
-        Factor resultFactor = multiplyAllFactors(factors, mulOpers);
-        if(mulOpers.get() > 0){
-            normalizeFactor(resultFactor,addOpers); // Normalize the result factor if it contains more than one variable
+        Marginals marginals = new Marginals(network, queryVars);
+        int sharedMuls = mulOpers.get();  // Multiplications every query variable's marginal depends on
+        for (int q = 0; q < queryVars.length; q++) {
+            int queryStart = mulOpers.get();
+            List<Factor> remaining = factors;
+            if (queryVars.length > 1) {
+                // Eliminate the other query variables from a copy of the shared factors
+                remaining = new ArrayList<>(factors);
+                for (int other : queryVars) {
+                    if (other != queryVars[q] && !getRelevantFactors(remaining, other).isEmpty()) {
+                        eliminate(remaining, other, mulOpers, addOpers, stats, memo);
+                    }
+                }
+            }
+            if (stats != null) {
+                start = System.nanoTime();
+            }
+            // Multiply all remaining factors to get the final result
+            Factor resultFactor = multiplyAllFactors(remaining, mulOpers, stats, memo);
+            if (memo != EliminationMemo.DIRECT || (remaining != factors && factors.contains(resultFactor))) {
+                // Normalizing works in place, and a shared factor is still needed by the other queries or the memo
+                resultFactor = resultFactor.copy();
+            }
+            // Whether this marginal is normalized depends only on the multiplications it took, not on the other queries'
+            if(sharedMuls + mulOpers.get() - queryStart > 0){
+                normalizeFactor(resultFactor,addOpers); // Normalize the result factor if it contains more than one variable
+            }
+            for (int outcome = 0; outcome < network.cardinalities[queryVars[q]]; outcome++) {
+                marginals.distributions[q][outcome] = resultFactor.getValue(queryVars[q], outcome);
+            }
+            if (stats != null) {
+                stats.finalNanos += System.nanoTime() - start;
+            }
         }
+        marginals.mulOpers = mulOpers.get();
+        marginals.addOpers = addOpers.get();
+        return marginals;
+    }
 
+    // Returns the variables of the elimination order that are not ancestors of a query variable or of the evidence, or
+    // that are independent of every query variable given the evidence; their factors can be left out
+    static BitSet prune(CompiledNetwork network, int[] queryVars, int[] evidence, int[] eliminationOrder, QueryStats stats) {
+        boolean[] observed = new boolean[network.size()];
+        for (int var = 0; var < observed.length; var++) {
+            observed[var] = evidence[var] != CompiledNetwork.NO_EVIDENCE;
+        }
+        // One traversal per query variable serves every hidden variable
+        BayesBall bayesBall = new BayesBall(network);
+        BitSet connected = new BitSet(network.size());
+        BitSet relevant = new BitSet(network.size());
+        for (int queryVar : queryVars) {
+            connected.or(bayesBall.reachable(queryVar, observed, stats));
+            relevant.or(relevantAncestors(network, queryVar, observed));
+        }
+        BitSet pruned = new BitSet(network.size());
+        for (int var : eliminationOrder) {
+            if (!relevant.get(var) || !connected.get(var)) {
+                pruned.set(var);
+            }
+        }
+        return pruned;
+    }
+    // Returns the elimination order without the pruned variables
+    static int[] remaining(int[] eliminationOrder, BitSet pruned) {
+        int[] order = new int[eliminationOrder.length];
+        int orderLength = 0;
+        for (int var : eliminationOrder) {
+            if (!pruned.get(var)) {
+                order[orderLength++] = var;
+            }
+        }
+        return Arrays.copyOf(order, orderLength);
+    }
 
-        double result = resultFactor.getValue(queryVar, queryValue);
-        // Return the result along with the number of addition and multiplication operations
-        return Math.round(result * 100000.0) / 100000.0 + "," + addOpers.get() + "," + mulOpers.get();
+    // Multiplies the factors that mention a variable and replaces them with the product summed over the variable
+    private static void eliminate(List<Factor> factors, int var, AtomicInteger mulOpers, AtomicInteger addOpers, QueryStats stats, EliminationMemo memo) {
+        long start = stats != null ? System.nanoTime() : 0;
+        List<Factor> relevantFactors = getRelevantFactors(factors, var);
+        factors.removeAll(relevantFactors);
+        Factor newFactor = memo.multiplyAndSumOut(relevantFactors, var, mulOpers, addOpers);
+        factors.add(newFactor);
+        Collections.sort(factors);
+        if (stats != null) {
+            // The fused step never stores the product it sums over, but its size is what the step costs
+            Factor first = relevantFactors.get(0);
+            stats.step(var, System.nanoTime() - start, (long) newFactor.size() * first.cardinalities[first.indexOf(var)]);
+            stats.factor(newFactor.stored());
+        }
     }
 
-    private static List<Factor> initializeFactors(BayesianNetwork bn, Map<String, String> evidence) {
+    private static List<Factor> initializeFactors(CompiledNetwork network, int[] evidence, BitSet pruned, QueryStats stats, EliminationMemo memo) {
         List<Factor> factors = new ArrayList<>();
-        for (NodeBase node : bn.getNodes().values()) {
-            Map<String, String> nodeEvidence = new HashMap<>();
-            for (NodeBase parent : node.parents) {
-                if (evidence.containsKey(parent.name)) {
-                    nodeEvidence.put(parent.name, evidence.get(parent.name));
-                }
+        for (int node = 0; node < network.size(); node++) {
+            if (mentionsAny(network, node, pruned)) {
+                continue;  // The factor would be removed with the pruned variable
             }
-            if (evidence.containsKey(node.name)) {
-                nodeEvidence.put(node.name, evidence.get(node.name));
+            Factor current_factor = memo.cpt(network, node, evidence);
+            if (stats != null) {
+                stats.factor(current_factor.stored());
             }
-            Factor current_factor = new Factor(node, nodeEvidence);
-            if(current_factor.values.size() > 1){
+            if(current_factor.size() > 1){
                 factors.add(current_factor);  // Add the factor if it has more than one value
             }
 
@@ -65,7 +178,7 @@ public class VariableElimination {
         return factors;
     }
     // Get the list of factors that contain the specified variable
-    private static List<Factor> getRelevantFactors(List<Factor> factors, String var) {
+    private static List<Factor> getRelevantFactors(List<Factor> factors, int var) {
         List<Factor> relevantFactors = new ArrayList<>();
         for (Factor factor : factors) {
             if (factor.contains(var)) {
@@ -75,61 +188,49 @@ public class VariableElimination {
         Collections.sort(relevantFactors);   // Sort the relevant factors
         return relevantFactors;
     }
-    // Multiply all relevant factors and sum out the specified variable
-    private static Factor multiplyAndSumOut(List<Factor> factors, String var, AtomicInteger mulOpers, AtomicInteger addOpers) {
-        Factor result = factors.get(0);
-        for (int i = 1; i < factors.size(); i++) {
-            result = Factor.multiply(result, factors.get(i), mulOpers);
-        }
-        return Factor.sumOut(result, var, addOpers);
-    }
     // Multiply all remaining factors
-    private static Factor multiplyAllFactors(List<Factor> factors, AtomicInteger mulOpers) {
+    private static Factor multiplyAllFactors(List<Factor> factors, AtomicInteger mulOpers, QueryStats stats, EliminationMemo memo) {
         Factor resultFactor = factors.get(0);
         for (int i = 1; i < factors.size(); i++) {
-            resultFactor = Factor.multiply(resultFactor, factors.get(i), mulOpers);
+            resultFactor = memo.multiply(resultFactor, factors.get(i), mulOpers);
+            if (stats != null) {
+                stats.factor(resultFactor.stored());
+            }
         }
         return resultFactor;
     }
 
     private static void normalizeFactor(Factor factor,AtomicInteger addOpers) {
         double total = 0.0;
-        for (double val : factor.values.values()) {
+        for (double val : factor.values) {
             if(total > 0.0)
             {
                 addOpers.incrementAndGet();   // Count addition operations
             }
             total += val;
         }
-        for (Map.Entry<List<String>, Double> entry : factor.values.entrySet()) {
-            factor.values.put(entry.getKey(), entry.getValue() / total);
-
-        }
+        Factor.kernels.divide(factor.values, total);
     }
-    // Check if a variable is an ancestor of the query variable or any variable in the evidence
-    private static boolean isAncestor(String hidden, String query_var, Map<String, String> evidence, BayesianNetwork bn){
-        if(isAncestor(hidden, query_var, bn)){
-            return true;
-        }
-        for(String var : evidence.keySet()){
-            if(isAncestor(hidden, var, bn)){
-                return true;
+    // Returns the variables that are ancestors of the query variable or of any variable in the evidence
+    private static BitSet relevantAncestors(CompiledNetwork network, int queryVar, boolean[] observed) {
+        BitSet relevant = (BitSet) network.ancestors[queryVar].clone();
+        for (int var = 0; var < observed.length; var++) {
+            if (observed[var]) {
+                relevant.or(network.ancestors[var]);
             }
         }
-        return false;
+        return relevant;
     }
-    // Recursive helper function to check if one variable is an ancestor of another
-    private static boolean isAncestor(String hidden, String current, BayesianNetwork bn){
-        if(hidden.equals(current)){
+    // Check if the CPT of a node mentions any of the given variables
+    static boolean mentionsAny(CompiledNetwork network, int node, BitSet vars) {
+        if (vars.get(node)) {
             return true;
         }
-        NodeBase current_node = bn.getNode(current);
-        for(NodeBase parent : current_node.parents){
-            if(isAncestor(hidden, parent.name, bn)){
+        for (int parent : network.parents[node]) {
+            if (vars.get(parent)) {
                 return true;
             }
         }
-
         return false;
     }
 }
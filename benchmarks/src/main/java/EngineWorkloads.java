@@ -0,0 +1,68 @@
+import bench.Workloads;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Gives the JMH benchmarks (which cannot import the unnamed package) access to the engine
+public class EngineWorkloads implements Workloads {
+    // Operation counts are not part of the measurement, so the kernels share one pair of counters
+    private final AtomicInteger mulOpers = new AtomicInteger();
+    private final AtomicInteger addOpers = new AtomicInteger();
+
+    @Override
+    public Object load(String path, boolean streaming) {
+        BayesianNetwork network = new BayesianNetwork(path, streaming);
+        if (!network.isLoaded()) {
+            throw new IllegalStateException("Could not load " + path);
+        }
+        return network;
+    }
+
+    @Override
+    public int id(Object network, String name) {
+        return compiled(network).id(name);
+    }
+
+    @Override
+    public Object cptFactor(Object network, int node, int[] evidence) {
+        return new Factor(compiled(network), node, evidence);
+    }
+
+    @Override
+    public Object multiply(Object factor1, Object factor2) {
+        return Factor.multiply((Factor) factor1, (Factor) factor2, mulOpers);
+    }
+
+    @Override
+    public Object sumOut(Object factor, int var) {
+        return Factor.sumOut((Factor) factor, var, addOpers);
+    }
+
+    @Override
+    public void useKernels(String label) {
+        Factor.kernels = FactorKernels.fromLabel(label);
+    }
+
+    @Override
+    public int[] order(Object network, int[] evidence, int[] hidden, String heuristic) {
+        return new EliminationOrdering(compiled(network), evidence).order(hidden, EliminationOrdering.Heuristic.fromLabel(heuristic));
+    }
+
+    @Override
+    public String eliminate(Object network, int queryVar, int queryValue, int[] evidence, int[] order) {
+        return VariableElimination.variable_elimination(compiled(network), queryVar, queryValue, evidence, order, null);
+    }
+
+    @Override
+    public Object bayesBall(Object network) {
+        return new BayesBall(compiled(network));
+    }
+
+    @Override
+    public boolean areIndependent(Object bayesBall, int nodeA, int nodeB, boolean[] observed) {
+        return ((BayesBall) bayesBall).areIndependent(nodeA, nodeB, observed);
+    }
+
+    private static CompiledNetwork compiled(Object network) {
+        return ((BayesianNetwork) network).getCompiled();
+    }
+}
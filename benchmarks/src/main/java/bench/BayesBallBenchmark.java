@@ -0,0 +1,33 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Independence of the first and last generated variables given the fixture's evidence
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BayesBallBenchmark {
+    @Param({"chain", "polytree", "grid", "random"})
+    public String shape;
+    @Param({"100", "1000"})
+    public int size;
+
+    private Fixture fixture;
+    private Object bayesBall;
+
+    @Setup
+    public void setUp() {
+        fixture = new Fixture(shape, size, 2);
+        bayesBall = fixture.workloads.bayesBall(fixture.network);
+    }
+
+    @Benchmark
+    public boolean areIndependent() {
+        return fixture.workloads.areIndependent(bayesBall, fixture.ids[0], fixture.queryVar, fixture.observed);
+    }
+}
@@ -0,0 +1,44 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// A full variable elimination query, eliminating in a min-fill order ("good") or in its reverse ("bad")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EliminationBenchmark {
+    @Param({"chain", "polytree", "grid", "random"})
+    public String shape;
+    @Param({"25"})
+    public int size;
+    @Param({"2"})
+    public int cardinality;
+    @Param({"good", "bad"})
+    public String order;
+
+    private Fixture fixture;
+    private int[] eliminationOrder;
+
+    @Setup
+    public void setUp() {
+        fixture = new Fixture(shape, size, cardinality);
+        eliminationOrder = fixture.workloads.order(fixture.network, fixture.evidence, fixture.hidden, "min-fill");
+        if (order.equals("bad")) {
+            for (int i = 0, j = eliminationOrder.length - 1; i < j; i++, j--) {
+                int swap = eliminationOrder[i];
+                eliminationOrder[i] = eliminationOrder[j];
+                eliminationOrder[j] = swap;
+            }
+        }
+    }
+
+    @Benchmark
+    public String query() {
+        return fixture.workloads.eliminate(fixture.network, fixture.queryVar, 0, fixture.evidence, eliminationOrder);
+    }
+}
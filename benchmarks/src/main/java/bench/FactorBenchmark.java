@@ -0,0 +1,80 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// The factor kernels on the family with the most parents: building its CPT factor under evidence on one parent,
+// multiplying it with the CPT of another parent, and summing that parent out of the product, with the scalar loops and
+// with the Vector API loops (the forked JVM adds the incubator module; "vector" fails rather than fall back to scalar).
+// With binary variables too, the sum-out on polytree, grid and random networks and the product on random ones take the
+// vector rows: the trailing variables along which every input is contiguous or constant are computed as one row.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class FactorBenchmark {
+    @Param({"chain", "polytree", "grid", "random"})
+    public String shape;
+    @Param({"100"})
+    public int size;
+    @Param({"2", "4"})
+    public int cardinality;
+    @Param({"scalar", "vector"})
+    public String kernels;
+
+    private Workloads workloads;
+    private Object network;
+    private int node;
+    private int[] parentEvidence;   // The node's last parent observed
+    private int[] noEvidence;
+    private Object nodeFactor;
+    private Object parentFactor;
+    private Object product;
+    private int parent;
+
+    @Setup
+    public void setUp() {
+        Fixture fixture = new Fixture(shape, size, cardinality);
+        workloads = fixture.workloads;
+        workloads.useKernels(kernels);
+        network = fixture.network;
+        int widest = 0;
+        for (int i = 1; i < size; i++) {
+            if (fixture.description.parents[i].length > fixture.description.parents[widest].length) {
+                widest = i;
+            }
+        }
+        int[] parents = fixture.description.parents[widest];
+        if (parents.length == 0) {
+            throw new IllegalStateException("Generated network has no edges");
+        }
+        node = fixture.ids[widest];
+        parent = fixture.ids[parents[0]];
+        noEvidence = new int[size];
+        Arrays.fill(noEvidence, -1);
+        parentEvidence = noEvidence.clone();
+        parentEvidence[fixture.ids[parents[parents.length - 1]]] = 0;
+        nodeFactor = workloads.cptFactor(network, node, noEvidence);
+        parentFactor = workloads.cptFactor(network, parent, noEvidence);
+        product = workloads.multiply(nodeFactor, parentFactor);
+    }
+
+    @Benchmark
+    public Object cptWithEvidence() {
+        return workloads.cptFactor(network, node, parentEvidence);
+    }
+
+    @Benchmark
+    public Object multiply() {
+        return workloads.multiply(nodeFactor, parentFactor);
+    }
+
+    @Benchmark
+    public Object sumOut() {
+        return workloads.sumOut(product, parent);
+    }
+}
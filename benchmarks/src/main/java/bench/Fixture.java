@@ -0,0 +1,60 @@
+package bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+// A generated network loaded into the engine, with a fixed query over it
+// Every fifth variable is observed (outcome 0), the last variable is queried and the rest are hidden
+public class Fixture {
+    public static final long SEED = 42;
+
+    public final Workloads workloads = Workloads.load();
+    public final NetworkGenerator.Network description;
+    public final Path path;
+    public final Object network;
+    public final int[] ids;          // Compiled id of each generated variable
+    public final int[] evidence;     // Indexed by compiled id
+    public final boolean[] observed;
+    public final int queryVar;
+    public final int[] hidden;       // Compiled ids of the unobserved variables other than the query
+
+    public Fixture(String shape, int size, int maxCardinality) {
+        this.description = NetworkGenerator.generate(NetworkGenerator.Shape.fromLabel(shape), size, maxCardinality, SEED);
+        this.path = write(description);
+        this.network = workloads.load(path.toString(), true);
+        this.ids = new int[size];
+        this.evidence = new int[size];
+        this.observed = new boolean[size];
+        int hiddenCount = 0;
+        for (int i = 0; i < size; i++) {
+            ids[i] = workloads.id(network, description.names[i]);
+            evidence[ids[i]] = -1;
+        }
+        for (int i = 0; i < size - 1; i++) {
+            if (i % 5 == 4) {
+                evidence[ids[i]] = 0;
+                observed[ids[i]] = true;
+            } else {
+                hiddenCount++;
+            }
+        }
+        this.queryVar = ids[size - 1];
+        this.hidden = new int[hiddenCount];
+        int filled = 0;
+        for (int i = 0; i < size - 1; i++) {
+            if (!observed[ids[i]]) {
+                hidden[filled++] = ids[i];
+            }
+        }
+    }
+
+    // Generates a network into a temporary XMLBIF file
+    public static Path write(NetworkGenerator.Network description) {
+        try {
+            return NetworkGenerator.writeTemporary(description);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Parsing an XMLBIF file into a compiled network, with the DOM parser and the streaming loader
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+    @Param({"chain", "polytree", "grid", "random"})
+    public String shape;
+    @Param({"100", "1000"})
+    public int size;
+    @Param({"2", "4"})
+    public int cardinality;
+    @Param({"dom", "stax"})
+    public String loader;
+
+    private Workloads workloads;
+    private Path path;
+
+    @Setup
+    public void setUp() {
+        workloads = Workloads.load();
+        path = Fixture.write(NetworkGenerator.generate(NetworkGenerator.Shape.fromLabel(shape), size, cardinality, Fixture.SEED));
+    }
+
+    @Benchmark
+    public Object load() {
+        return workloads.load(path.toString(), loader.equals("stax"));
+    }
+}
@@ -0,0 +1,174 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+// Generates synthetic XMLBIF networks of a given shape, size and cardinality
+// Usage: java bench.NetworkGenerator SHAPE SIZE MAX_CARDINALITY SEED OUT.xml
+public class NetworkGenerator {
+    public static final int MAX_IN_DEGREE = 3;  // Parents per node in random DAGs
+
+    // Structures the generator can build
+    public enum Shape {
+        CHAIN,     // V0 -> V1 -> ... -> Vn-1
+        POLYTREE,  // A random tree with randomly oriented edges: singly connected, nodes may have several parents
+        GRID,      // A square lattice where each node has the nodes above and to its left as parents
+        RANDOM;    // A random DAG over a random topological order, with at most MAX_IN_DEGREE parents per node
+
+        public static Shape fromLabel(String label) {
+            return valueOf(label.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    // Structure of a generated network: variable i is named "V" + i
+    public static final class Network {
+        public final String[] names;
+        public final int[] cardinalities;
+        public final int[][] parents;
+        public final double[][] tables;  // In XMLBIF TABLE order, the node's own outcome changing fastest
+
+        Network(String[] names, int[] cardinalities, int[][] parents, double[][] tables) {
+            this.names = names;
+            this.cardinalities = cardinalities;
+            this.parents = parents;
+            this.tables = tables;
+        }
+
+        public int size() {
+            return names.length;
+        }
+    }
+
+    // Builds a network; cardinalities are drawn between 2 and maxCardinality
+    public static Network generate(Shape shape, int size, int maxCardinality, long seed) {
+        if (size < 1 || maxCardinality < 2) {
+            throw new IllegalArgumentException("Need at least one variable and two outcomes");
+        }
+        Random random = new Random(seed);
+        List<List<Integer>> parentLists = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            parentLists.add(new ArrayList<>());
+        }
+        switch (shape) {
+            case CHAIN:
+                for (int i = 1; i < size; i++) {
+                    parentLists.get(i).add(i - 1);
+                }
+                break;
+            case POLYTREE:
+                // Any orientation of a tree's edges is acyclic
+                for (int i = 1; i < size; i++) {
+                    int other = random.nextInt(i);
+                    if (random.nextBoolean()) {
+                        parentLists.get(i).add(other);
+                    } else {
+                        parentLists.get(other).add(i);
+                    }
+                }
+                break;
+            case GRID:
+                int width = (int) Math.ceil(Math.sqrt(size));
+                for (int i = 0; i < size; i++) {
+                    if (i >= width) {
+                        parentLists.get(i).add(i - width);
+                    }
+                    if (i % width > 0) {
+                        parentLists.get(i).add(i - 1);
+                    }
+                }
+                break;
+            case RANDOM:
+                // Parents are drawn among the nodes before each node in a shuffled order
+                List<Integer> order = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    order.add(i);
+                }
+                Collections.shuffle(order, random);
+                for (int position = 1; position < size; position++) {
+                    int degree = random.nextInt(Math.min(MAX_IN_DEGREE, position) + 1);
+                    List<Integer> candidates = new ArrayList<>(order.subList(0, position));
+                    Collections.shuffle(candidates, random);
+                    parentLists.get(order.get(position)).addAll(candidates.subList(0, degree));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape " + shape);
+        }
+
+        String[] names = new String[size];
+        int[] cardinalities = new int[size];
+        int[][] parents = new int[size][];
+        for (int i = 0; i < size; i++) {
+            names[i] = "V" + i;
+            cardinalities[i] = 2 + random.nextInt(maxCardinality - 1);
+            parents[i] = parentLists.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        double[][] tables = new double[size][];
+        for (int i = 0; i < size; i++) {
+            int rows = 1;
+            for (int parent : parents[i]) {
+                rows *= cardinalities[parent];
+            }
+            tables[i] = new double[rows * cardinalities[i]];
+            for (int row = 0; row < rows; row++) {
+                double total = 0.0;
+                for (int j = 0; j < cardinalities[i]; j++) {
+                    tables[i][row * cardinalities[i] + j] = 0.05 + random.nextDouble();
+                    total += tables[i][row * cardinalities[i] + j];
+                }
+                for (int j = 0; j < cardinalities[i]; j++) {
+                    tables[i][row * cardinalities[i] + j] /= total;
+                }
+            }
+        }
+        return new Network(names, cardinalities, parents, tables);
+    }
+
+    // Writes a network as XMLBIF, the format read by BayesianNetwork
+    public static void write(Network network, Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<NETWORK>\n");
+            for (int i = 0; i < network.size(); i++) {
+                out.write("<VARIABLE>\n\t<NAME>" + network.names[i] + "</NAME>\n");
+                for (int j = 0; j < network.cardinalities[i]; j++) {
+                    out.write("\t<OUTCOME>v" + j + "</OUTCOME>\n");
+                }
+                out.write("</VARIABLE>\n");
+            }
+            for (int i = 0; i < network.size(); i++) {
+                out.write("<DEFINITION>\n\t<FOR>" + network.names[i] + "</FOR>\n");
+                for (int parent : network.parents[i]) {
+                    out.write("\t<GIVEN>" + network.names[parent] + "</GIVEN>\n");
+                }
+                StringBuilder table = new StringBuilder();
+                for (double value : network.tables[i]) {
+                    table.append(table.length() == 0 ? "" : " ").append(value);
+                }
+                out.write("\t<TABLE>" + table + "</TABLE>\n</DEFINITION>\n");
+            }
+            out.write("</NETWORK>\n");
+        }
+    }
+
+    // Generates a network into a temporary file, deleted when the JVM exits
+    public static Path writeTemporary(Network network) throws IOException {
+        Path path = Files.createTempFile("bench-network", ".xml");
+        path.toFile().deleteOnExit();
+        write(network, path);
+        return path;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 5) {
+            System.err.println("Usage: java bench.NetworkGenerator chain|polytree|grid|random SIZE MAX_CARDINALITY SEED OUT.xml");
+            System.exit(2);
+        }
+        Network network = generate(Shape.fromLabel(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]), Long.parseLong(args[3]));
+        write(network, Paths.get(args[4]));
+    }
+}
@@ -0,0 +1,42 @@
+package bench;
+
+// The engine operations being measured
+// The engine lives in the unnamed package, which JMH benchmarks cannot import, so EngineWorkloads implements this
+// interface there and the benchmarks load it by name. Networks, factors and Bayes Ball instances are passed as
+// opaque handles and variables as compiled ids. With one implementation loaded, the interface calls are inlined.
+public interface Workloads {
+    // Parses an XMLBIF file with the DOM parser or the streaming loader and returns the network
+    Object load(String path, boolean streaming);
+
+    // Compiled id of a variable
+    int id(Object network, String name);
+
+    // The CPT of a node restricted to the evidence (an outcome id per variable, -1 when unobserved)
+    Object cptFactor(Object network, int node, int[] evidence);
+
+    Object multiply(Object factor1, Object factor2);
+
+    Object sumOut(Object factor, int var);
+
+    // Selects the dense factor loops: auto, scalar or vector
+    void useKernels(String label);
+
+    // Returns an elimination order of the hidden variables for the given heuristic label
+    int[] order(Object network, int[] evidence, int[] hidden, String heuristic);
+
+    // Runs variable elimination with the given order and returns the "probability,additions,multiplications" answer
+    String eliminate(Object network, int queryVar, int queryValue, int[] evidence, int[] order);
+
+    Object bayesBall(Object network);
+
+    boolean areIndependent(Object bayesBall, int nodeA, int nodeB, boolean[] observed);
+
+    // Loads the implementation compiled from the engine sources
+    static Workloads load() {
+        try {
+            return (Workloads) Class.forName("EngineWorkloads").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Engine classes are not on the class path", e);
+        }
+    }
+}
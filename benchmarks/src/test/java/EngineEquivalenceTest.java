@@ -0,0 +1,167 @@
+import bench.NetworkGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The engines that reuse or reshape the work of variable elimination against a fresh run on generated networks, over a
+// stream of queries whose evidence changes one variable at a time: the incremental session and the shared factor memo
+// must give exactly its answers and counts, sparse factors the same probabilities and never more operations, and the
+// junction tree the same probabilities.
+public class EngineEquivalenceTest {
+    private static final int SIZE = 16;
+    private static final int QUERIES = 150;  // Per network
+
+    private final Random random = new Random(19);
+
+    @Test
+    public void enginesMatchVariableElimination() throws IOException {
+        long seed = 0;
+        for (NetworkGenerator.Shape shape : NetworkGenerator.Shape.values()) {
+            NetworkGenerator.Network generated = NetworkGenerator.generate(shape, SIZE, 3, seed++);
+            makeRowsDeterministic(generated);
+            BayesianNetwork network = new BayesianNetwork(NetworkGenerator.writeTemporary(generated).toString(), false);
+            check(shape, generated, network);
+        }
+    }
+
+    private void check(NetworkGenerator.Shape shape, NetworkGenerator.Network generated, BayesianNetwork network) {
+        CompiledNetwork compiled = network.getCompiled();
+        int n = compiled.size();
+        InferenceSession session = new InferenceSession(network);
+        FactorMemo memo = new FactorMemo(1 << 20);
+        int[] evidence = new int[n];
+        Arrays.fill(evidence, CompiledNetwork.NO_EVIDENCE);
+        int[] world = null;
+        for (int q = 0; q < QUERIES; q++) {
+            // Observe or forget one variable of a sampled world, so the evidence is always possible; a new world now and
+            // then changes the observed outcomes
+            if (q % 30 == 0) {
+                world = sample(generated, compiled);
+                Arrays.fill(evidence, CompiledNetwork.NO_EVIDENCE);
+            }
+            int observed = random.nextInt(n);
+            evidence[observed] = random.nextInt(3) == 0 ? CompiledNetwork.NO_EVIDENCE : world[observed];
+            int[] queryVars = queryVars(evidence);
+            if (queryVars.length == 0) {
+                continue;
+            }
+            int[] order = hidden(n, queryVars, evidence);
+            EliminationOrdering.Heuristic heuristic = random.nextBoolean() ? null : EliminationOrdering.Heuristic.MIN_FILL;
+            String context = shape + " query " + q + " " + Arrays.toString(queryVars) + " | " + Arrays.toString(evidence);
+
+            Marginals expected = VariableElimination.marginals(compiled, queryVars, evidence, order, heuristic, null);
+            Marginals incremental = session.marginals(queryVars, evidence, order, heuristic, null);
+            Marginals memoized = VariableElimination.marginals(compiled, queryVars, evidence, order, null, heuristic, null, memo.forQuery());
+            assertSame(expected, incremental, context + " (session)");
+            assertSame(expected, memoized, context + " (memo)");
+
+            Factor.sparseDensity = 0.5;
+            Marginals sparse;
+            try {
+                sparse = VariableElimination.marginals(compiled, queryVars, evidence, order, heuristic, null);
+            } finally {
+                Factor.sparseDensity = 0;
+            }
+            assertClose(expected, sparse, 1e-12, context + " (sparse)");
+            assertTrue(sparse.mulOpers <= expected.mulOpers && sparse.addOpers <= expected.addOpers, context + " (sparse counts)");
+
+            assertClose(expected, network.getJunctionTree().marginals(queryVars, evidence), 1e-9, context + " (junction tree)");
+        }
+        // Both must have answered some queries from earlier factors, or they were only compared as fresh runs
+        assertTrue(session.getReused() > 0, shape + ": the session reused no factor");
+        assertTrue(memo.getHits() > 0, shape + ": the memo was never hit");
+    }
+
+    // Draws every variable from its CPT given its parents, indexed by compiled id
+    private int[] sample(NetworkGenerator.Network generated, CompiledNetwork compiled) {
+        int[] outcomes = new int[generated.size()];
+        Arrays.fill(outcomes, -1);
+        for (int drawn = 0; drawn < generated.size(); ) {
+            for (int node = 0; node < generated.size(); node++) {
+                if (outcomes[node] > -1 || Arrays.stream(generated.parents[node]).anyMatch(parent -> outcomes[parent] == -1)) {
+                    continue;
+                }
+                // TABLE rows run over the parents' outcomes with the last parent changing fastest
+                int row = 0;
+                for (int parent : generated.parents[node]) {
+                    row = row * generated.cardinalities[parent] + outcomes[parent];
+                }
+                int card = generated.cardinalities[node];
+                double u = random.nextDouble();
+                int outcome = 0;
+                while (outcome < card - 1 && (u -= generated.tables[node][row * card + outcome]) >= 0) {
+                    outcome++;
+                }
+                outcomes[node] = outcome;
+                drawn++;
+            }
+        }
+        int[] world = new int[compiled.size()];
+        for (int node = 0; node < generated.size(); node++) {
+            int var = compiled.id(generated.names[node]);
+            world[var] = compiled.outcomeId(var, "v" + outcomes[node]);
+        }
+        return world;
+    }
+
+    // One or two unobserved variables
+    private int[] queryVars(int[] evidence) {
+        List<Integer> unobserved = new ArrayList<>();
+        for (int var = 0; var < evidence.length; var++) {
+            if (evidence[var] == CompiledNetwork.NO_EVIDENCE) {
+                unobserved.add(var);
+            }
+        }
+        Collections.shuffle(unobserved, random);
+        int count = Math.min(unobserved.size(), random.nextInt(4) == 0 ? 2 : 1);
+        return unobserved.subList(0, count).stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // The variables neither queried nor observed, in id order
+    private static int[] hidden(int n, int[] queryVars, int[] evidence) {
+        BitSet skipped = new BitSet();
+        for (int var : queryVars) {
+            skipped.set(var);
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int var = 0; var < n; var++) {
+            if (!skipped.get(var) && evidence[var] == CompiledNetwork.NO_EVIDENCE) {
+                order.add(var);
+            }
+        }
+        return order.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Makes half of the table rows deterministic, as in the gates and lookup tables sparse factors are meant for
+    private void makeRowsDeterministic(NetworkGenerator.Network network) {
+        for (int node = 0; node < network.size(); node++) {
+            int card = network.cardinalities[node];
+            double[] table = network.tables[node];
+            for (int row = 0; row < table.length; row += card) {
+                if (random.nextBoolean()) {
+                    int kept = random.nextInt(card);
+                    for (int j = 0; j < card; j++) {
+                        table[row + j] = j == kept ? 1.0 : 0.0;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertSame(Marginals expected, Marginals actual, String context) {
+        for (int i = 0; i < expected.vars.length; i++) {
+            assertArrayEquals(expected.distributions[i], actual.distributions[i], 0.0, context);
+        }
+        assertEquals(expected.addOpers, actual.addOpers, context + " additions");
+        assertEquals(expected.mulOpers, actual.mulOpers, context + " multiplications");
+    }
+
+    private static void assertClose(Marginals expected, Marginals actual, double delta, String context) {
+        for (int i = 0; i < expected.vars.length; i++) {
+            assertArrayEquals(expected.distributions[i], actual.distributions[i], delta, context);
+        }
+    }
+}
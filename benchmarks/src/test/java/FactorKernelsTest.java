@@ -0,0 +1,139 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The Vector API loops against the scalar ones on random factors of binary and ternary variables, the shapes of the
+// networks the engine answers: every cell must be bit-identical and every count equal, and the vector rows must fire
+public class FactorKernelsTest {
+    private static final int CASES = 2000;
+    private static final int VARIABLES = 7;  // Variables the random factors are drawn from
+
+    private final Random random = new Random(25);
+    private final FactorKernels vector = FactorKernels.fromLabel("vector");
+    private final int[] cardinalities = new int[VARIABLES];
+    private int vectorRows;
+
+    @Test
+    public void productsAndSumOutsMatchTheScalarLoops() {
+        for (int c = 0; c < CASES; c++) {
+            for (int var = 0; var < VARIABLES; var++) {
+                cardinalities[var] = 2 + random.nextInt(2);
+            }
+            List<Factor> factors = new ArrayList<>();
+            for (int f = 1 + random.nextInt(3); f >= 0; f--) {
+                factors.add(randomFactor());
+            }
+            int var = factors.get(0).variables[random.nextInt(factors.get(0).variables.length)];
+            List<Factor> relevant = new ArrayList<>();
+            for (Factor factor : factors) {
+                if (factor.contains(var)) {
+                    relevant.add(factor);
+                }
+            }
+            Factor product = compare(adds -> Factor.multiply(factors.get(0), factors.get(1), new AtomicInteger()));
+            int summed = product.variables[random.nextInt(product.variables.length)];
+            compare(adds -> Factor.sumOut(product, summed, adds));
+            compare(adds -> Factor.multiplyAndSumOut(relevant, var, new AtomicInteger(), adds));
+            compareRanges();
+        }
+        // Some of the random products must have gone through the vector rows, or this only compared the scalar loops
+        assertTrue(vectorRows > CASES / 20, "vector rows fired in " + vectorRows + " of " + CASES + " cases");
+    }
+
+    // Runs an operation with the scalar and the vector loops and checks the results and counts agree
+    private Factor compare(Operation operation) {
+        Factor.kernels = FactorKernels.SCALAR;
+        AtomicInteger scalarAdds = new AtomicInteger();
+        Factor expected = operation.run(scalarAdds);
+        Factor.kernels = vector;
+        AtomicInteger vectorAdds = new AtomicInteger();
+        Factor actual;
+        try {
+            actual = operation.run(vectorAdds);
+        } finally {
+            Factor.kernels = FactorKernels.select();
+        }
+        assertArrayEquals(expected.variables, actual.variables);
+        assertArrayEquals(bits(expected.values), bits(actual.values));
+        assertEquals(scalarAdds.get(), vectorAdds.get());
+        return expected;
+    }
+
+    // Splits a product into random ranges, which may start and end in the middle of a row
+    private void compareRanges() {
+        Factor left = randomFactor();
+        Factor right = randomFactor();
+        int[] resultCardinalities = cardinalities.clone();
+        int[] strides1 = strides(left);
+        int[] strides2 = strides(right);
+        if (VectorKernels.Rows.of(resultCardinalities, new int[][]{strides1, strides2}) != null) {
+            vectorRows++;
+        }
+        int size = 1;
+        for (int card : resultCardinalities) {
+            size *= card;
+        }
+        double[] expected = new double[size];
+        double[] actual = new double[size];
+        for (int from = 0; from < size; ) {
+            int to = Math.min(size, from + 1 + random.nextInt(40));
+            FactorKernels.SCALAR.multiplyRange(left.values, right.values, expected, resultCardinalities, strides1, strides2, from, to);
+            vector.multiplyRange(left.values, right.values, actual, resultCardinalities, strides1, strides2, from, to);
+            from = to;
+        }
+        assertArrayEquals(bits(expected), bits(actual));
+    }
+
+    // A factor over a random subset of the variables, in increasing order so that trailing runs are often contiguous,
+    // with some zero cells so that the running sums start late
+    private Factor randomFactor() {
+        List<Integer> chosen = new ArrayList<>();
+        for (int var = 0; var < VARIABLES; var++) {
+            if (random.nextInt(3) > 0) {
+                chosen.add(var);
+            }
+        }
+        if (chosen.isEmpty()) {
+            chosen.add(random.nextInt(VARIABLES));
+        }
+        if (random.nextInt(4) == 0) {
+            Collections.shuffle(chosen, random);
+        }
+        int[] variables = chosen.stream().mapToInt(Integer::intValue).toArray();
+        int[] factorCardinalities = new int[variables.length];
+        int size = 1;
+        for (int i = 0; i < variables.length; i++) {
+            factorCardinalities[i] = cardinalities[variables[i]];
+            size *= factorCardinalities[i];
+        }
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = random.nextInt(5) == 0 ? 0.0 : random.nextDouble();
+        }
+        return new Factor(null, variables, new int[variables.length], factorCardinalities, values);
+    }
+
+    // Strides of a factor along all the variables, 0 for those it does not mention
+    private static int[] strides(Factor factor) {
+        int[] strides = new int[VARIABLES];
+        for (int i = 0; i < factor.variables.length; i++) {
+            strides[factor.variables[i]] = factor.strides[i];
+        }
+        return strides;
+    }
+
+    private static long[] bits(double[] values) {
+        long[] bits = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bits[i] = Double.doubleToRawLongBits(values[i]);
+        }
+        return bits;
+    }
+
+    private interface Operation {
+        Factor run(AtomicInteger addOpers);
+    }
+}
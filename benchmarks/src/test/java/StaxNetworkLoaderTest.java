@@ -0,0 +1,62 @@
+import bench.NetworkGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The streaming loader's table parser against Double.parseDouble, which the DOM loader uses: it must read every
+// well-formed number to the same double and reject every malformed one
+public class StaxNetworkLoaderTest {
+    private static final String[] MALFORMED = {"1+2", "0.5+", "+-1", "--1", "1-2", "1e", "1e+", "e5", ".", "-", "+", "1.2.3", "1e2e3", ".e1"};
+
+    @Test
+    public void wellFormedNumbersMatchParseDouble() {
+        String[] tokens = {"0", "1", "-1", "+1", "0.25", ".5", "1.", "-0.0", "1e5", "1E-5", "2.5e+3", "+1.5E2", "0.1000000000000000055511151231257827",
+                "123456789012345678", "1e-300", "4.9e-324"};
+        for (String token : tokens) {
+            assertEquals(Double.parseDouble(token), parse(token)[0], token);
+        }
+        Random random = new Random(10);
+        for (int i = 0; i < 1000; i++) {
+            String token = Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(12) - 6));
+            assertEquals(Double.parseDouble(token), parse(token)[0], token);
+        }
+    }
+
+    @Test
+    public void malformedNumbersAreRejected() {
+        for (String token : MALFORMED) {
+            assertThrows(NumberFormatException.class, () -> Double.parseDouble(token), token);
+            assertThrows(NumberFormatException.class, () -> parse("0.5 " + token + " 0.5"), token);
+        }
+    }
+
+    @Test
+    public void bothLoadersRejectAMalformedTable() throws IOException {
+        NetworkGenerator.Network generated = NetworkGenerator.generate(NetworkGenerator.Shape.CHAIN, 3, 2, 10);
+        Path path = NetworkGenerator.writeTemporary(generated);
+        String xml = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        for (String token : MALFORMED) {
+            Files.write(path, xml.replaceFirst("<TABLE>[^ <]+", "<TABLE>" + token).getBytes(StandardCharsets.UTF_8));
+            assertThrows(NumberFormatException.class, () -> new BayesianNetwork(path.toString(), false), "DOM " + token);
+            assertThrows(NumberFormatException.class, () -> new BayesianNetwork(path.toString(), true), "StAX " + token);
+        }
+    }
+
+    // Parses a table text one character at a time, as chunks that split every number
+    private static double[] parse(String text) {
+        StaxNetworkLoader.TableParser parser = new StaxNetworkLoader.TableParser();
+        parser.reset();
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            parser.parse(chars, i, 1);
+        }
+        parser.endNumber();
+        return parser.toArray();
+    }
+}
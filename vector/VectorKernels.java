@@ -0,0 +1,245 @@
+import java.util.Arrays;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// SIMD factor loops on the incubating Vector API, picked up by FactorKernels.select when the module is present
+// Kept out of the engine directory because it only compiles with the module added:
+//   javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorKernels.java
+//   java --add-modules jdk.incubator.vector Ex1
+// Cells are computed a row at a time. A row is the longest run of trailing result variables along which every input is
+// either contiguous (its strides over the run are those of a dense table) or constant (stride 0), collapsed into one
+// variable: with binary and ternary variables a single outcome list is shorter than a vector, but the run usually is not.
+// An input contiguous along the row is loaded as vectors and a constant one is broadcast. Each cell still takes its
+// products in the same order and adds the outcomes of the summed out variable one after the other, so the cells and
+// counts are those of the scalar loops. Rows shorter than a vector run the scalar loops.
+final class VectorKernels extends FactorKernels.Scalar {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int CONSTANT = 1;    // How an input varies along a row
+    private static final int CONTIGUOUS = 2;
+
+    @Override
+    public void multiplyRange(double[] values1, double[] values2, double[] out, int[] cardinalities, int[] strides1, int[] strides2, int from, int to) {
+        Rows rows = Rows.of(cardinalities, new int[][]{strides1, strides2});
+        if (rows == null) {
+            super.multiplyRange(values1, values2, out, cardinalities, strides1, strides2, from, to);
+            return;
+        }
+        cardinalities = rows.cardinalities;
+        int[][] strides = rows.strides;
+        strides1 = strides[0];
+        strides2 = strides[1];
+        int last = cardinalities.length - 1;
+        int[] assignment = Factor.assignment(from, cardinalities);
+        int[] indices = startIndices(assignment, strides);
+        for (int i = from; i < to; ) {
+            int length = Math.min(cardinalities[last] - assignment[last], to - i);
+            int j = 0;
+            for (int bound = SPECIES.loopBound(length); j < bound; j += SPECIES.length()) {
+                load(values1, indices[0] + j * strides1[last], strides1[last])
+                        .mul(load(values2, indices[1] + j * strides2[last], strides2[last]))
+                        .intoArray(out, i + j);
+            }
+            for (; j < length; j++) {
+                out[i + j] = values1[indices[0] + j * strides1[last]] * values2[indices[1] + j * strides2[last]];
+            }
+            i += length;
+            nextRow(assignment, cardinalities, strides, indices);
+        }
+    }
+
+    @Override
+    public int sumOutRange(double[] in, double[] out, int[] cardinalities, int[] inStrides, int varStride, int varCard, int from, int to) {
+        Rows rows = Rows.of(cardinalities, new int[][]{inStrides});
+        if (rows == null) {
+            return super.sumOutRange(in, out, cardinalities, inStrides, varStride, varCard, from, to);
+        }
+        cardinalities = rows.cardinalities;
+        int[][] strides = rows.strides;
+        inStrides = strides[0];
+        int last = cardinalities.length - 1;
+        int[] assignment = Factor.assignment(from, cardinalities);
+        int[] indices = startIndices(assignment, strides);
+        int adds = 0;
+        for (int i = from; i < to; ) {
+            int length = Math.min(cardinalities[last] - assignment[last], to - i);
+            for (int k = 0; k < varCard; k++) {
+                adds += accumulate(in, indices[0] + k * varStride, inStrides[last], out, i, length);
+            }
+            i += length;
+            nextRow(assignment, cardinalities, strides, indices);
+        }
+        return adds;
+    }
+
+    @Override
+    public int multiplyAndSumOutRange(double[][] inValues, double[] out, int[] cardinalities, int[][] inStrides, int[] varStrides, int varCard, int from, int to) {
+        Rows rows = Rows.of(cardinalities, inStrides);
+        if (rows == null) {
+            return super.multiplyAndSumOutRange(inValues, out, cardinalities, inStrides, varStrides, varCard, from, to);
+        }
+        cardinalities = rows.cardinalities;
+        inStrides = rows.strides;
+        int m = inValues.length;
+        int last = cardinalities.length - 1;
+        int[] assignment = Factor.assignment(from, cardinalities);
+        int[] indices = startIndices(assignment, inStrides);
+        // Product of the inputs along the part of one row in the range, for one outcome of the variable
+        double[] row = new double[Math.min(cardinalities[last], to - from)];
+        int adds = 0;
+        for (int i = from; i < to; ) {
+            int length = Math.min(cardinalities[last] - assignment[last], to - i);
+            for (int k = 0; k < varCard; k++) {
+                int stride = inStrides[0][last];
+                int index = indices[0] + k * varStrides[0];
+                if (stride == 0) {
+                    Arrays.fill(row, 0, length, inValues[0][index]);
+                } else {
+                    System.arraycopy(inValues[0], index, row, 0, length);
+                }
+                for (int f = 1; f < m; f++) {
+                    multiplyInto(row, inValues[f], indices[f] + k * varStrides[f], inStrides[f][last], length);
+                }
+                adds += accumulate(row, 0, 1, out, i, length);
+            }
+            i += length;
+            nextRow(assignment, cardinalities, inStrides, indices);
+        }
+        return adds;
+    }
+
+    @Override
+    public void divide(double[] values, double divisor) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(values.length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, values, i).div(divisor).intoArray(values, i);
+        }
+        for (; i < values.length; i++) {
+            values[i] = values[i] / divisor;
+        }
+    }
+
+    // The result seen as rows: the variables before the run, then the run as one variable whose stride in each input is
+    // 1 (contiguous) or 0 (constant). The arrays passed in are shared by the ranges of one result, so they are copied.
+    static final class Rows {
+        final int[] cardinalities;
+        final int[][] strides;
+
+        private Rows(int[] cardinalities, int[][] strides) {
+            this.cardinalities = cardinalities;
+            this.strides = strides;
+        }
+
+        // Returns the rows of a result, or null if the longest run is shorter than a vector
+        static Rows of(int[] cardinalities, int[][] strides) {
+            int m = strides.length;
+            int[] kinds = new int[m];  // 0 until the run passes a variable of more than one outcome
+            int[] next = new int[m];
+            int start = cardinalities.length;
+            int length = 1;
+            while (start > 0) {
+                int j = start - 1;
+                if (cardinalities[j] > 1) {
+                    // The run grows over the variable if every input keeps its kind across it
+                    boolean runs = true;
+                    for (int f = 0; f < m && runs; f++) {
+                        int stride = strides[f][j];
+                        if (stride == 0 && kinds[f] != CONTIGUOUS) {
+                            next[f] = CONSTANT;
+                        } else if (stride == length && kinds[f] != CONSTANT) {
+                            next[f] = CONTIGUOUS;
+                        } else {
+                            runs = false;
+                        }
+                    }
+                    if (!runs) {
+                        break;
+                    }
+                    System.arraycopy(next, 0, kinds, 0, m);
+                    length *= cardinalities[j];
+                }
+                start = j;
+            }
+            if (length < SPECIES.length()) {
+                return null;
+            }
+            int[] rowCardinalities = Arrays.copyOf(cardinalities, start + 1);
+            rowCardinalities[start] = length;
+            int[][] rowStrides = new int[m][];
+            for (int f = 0; f < m; f++) {
+                rowStrides[f] = Arrays.copyOf(strides[f], start + 1);
+                rowStrides[f][start] = kinds[f] == CONTIGUOUS ? 1 : 0;
+            }
+            return new Rows(rowCardinalities, rowStrides);
+        }
+    }
+
+    private static int[] startIndices(int[] assignment, int[][] strides) {
+        int[] indices = new int[strides.length];
+        for (int f = 0; f < strides.length; f++) {
+            for (int j = 0; j < assignment.length; j++) {
+                indices[f] += assignment[j] * strides[f][j];
+            }
+        }
+        return indices;
+    }
+    // Moves the input indices from the current place in a row to the start of the next row
+    private static void nextRow(int[] assignment, int[] cardinalities, int[][] strides, int[] indices) {
+        int last = assignment.length - 1;
+        for (int f = 0; f < indices.length; f++) {
+            indices[f] -= strides[f][last] * assignment[last];
+        }
+        assignment[last] = 0;
+        for (int j = last - 1; j >= 0; j--) {
+            if (++assignment[j] < cardinalities[j]) {
+                for (int f = 0; f < indices.length; f++) {
+                    indices[f] += strides[f][j];
+                }
+                return;
+            }
+            for (int f = 0; f < indices.length; f++) {
+                indices[f] -= strides[f][j] * (assignment[j] - 1);
+            }
+            assignment[j] = 0;
+        }
+    }
+
+    // Loads a vector of an input running along the row (stride 1) or constant along it (stride 0)
+    private static DoubleVector load(double[] values, int index, int stride) {
+        return stride == 0 ? DoubleVector.broadcast(SPECIES, values[index]) : DoubleVector.fromArray(SPECIES, values, index);
+    }
+    // Multiplies the first length entries of the row by an input
+    private static void multiplyInto(double[] row, double[] in, int index, int stride, int length) {
+        int j = 0;
+        for (int bound = SPECIES.loopBound(length); j < bound; j += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, row, j).mul(load(in, index + j * stride, stride)).intoArray(row, j);
+        }
+        for (; j < length; j++) {
+            row[j] *= in[index + j * stride];
+        }
+    }
+    // Adds an input to the cells out[outIndex..outIndex+length) and returns the additions counted: a cell that is
+    // still zero takes the value instead, as the scalar loop's running sum does
+    private static int accumulate(double[] in, int inIndex, int inStride, double[] out, int outIndex, int length) {
+        int adds = 0;
+        int j = 0;
+        for (int bound = SPECIES.loopBound(length); j < bound; j += SPECIES.length()) {
+            DoubleVector sum = DoubleVector.fromArray(SPECIES, out, outIndex + j);
+            DoubleVector value = load(in, inIndex + j * inStride, inStride);
+            VectorMask<Double> started = sum.compare(VectorOperators.NE, 0.0);
+            adds += started.trueCount();
+            value.blend(sum.add(value), started).intoArray(out, outIndex + j);
+        }
+        for (; j < length; j++) {
+            double value = in[inIndex + j * inStride];
+            if (out[outIndex + j] != 0.0) {
+                out[outIndex + j] += value;
+                adds++;
+            } else {
+                out[outIndex + j] = value;
+            }
+        }
+        return adds;
+    }
+}